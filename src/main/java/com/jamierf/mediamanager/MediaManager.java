@@ -2,22 +2,33 @@ package com.jamierf.mediamanager;
 
 import com.codahale.metrics.MetricRegistry;
 import com.jamierf.mediamanager.config.*;
+import com.jamierf.mediamanager.db.BloomFilterFileDatabase;
+import com.jamierf.mediamanager.db.CachingQualityDatabase;
+import com.jamierf.mediamanager.db.CachingShowDatabase;
 import com.jamierf.mediamanager.db.FileDatabase;
+import com.jamierf.mediamanager.db.InstrumentedFileDatabase;
+import com.jamierf.mediamanager.db.InstrumentedQualityDatabase;
+import com.jamierf.mediamanager.db.InstrumentedShowDatabase;
 import com.jamierf.mediamanager.db.QualityDatabase;
 import com.jamierf.mediamanager.db.ShowDatabase;
 import com.jamierf.mediamanager.db.azure.AzureTableFileDatabase;
 import com.jamierf.mediamanager.db.azure.AzureTableQualityDatabase;
 import com.jamierf.mediamanager.db.azure.AzureTableShowDatabase;
+import com.jamierf.mediamanager.db.local.LocalFileDatabase;
+import com.jamierf.mediamanager.db.local.LocalQualityDatabase;
+import com.jamierf.mediamanager.db.local.LocalShowDatabase;
 import com.jamierf.mediamanager.downloader.Downloader;
 import com.jamierf.mediamanager.downloader.WatchDirDownloader;
 import com.jamierf.mediamanager.filters.QualityFilter;
 import com.jamierf.mediamanager.handler.GarbageFileHandler;
 import com.jamierf.mediamanager.handler.MediaFileHandler;
 import com.jamierf.mediamanager.handler.MediaRarFileHandler;
+import com.jamierf.mediamanager.healthchecks.CircuitBreakerHealthcheck;
 import com.jamierf.mediamanager.healthchecks.DatabaseHealthcheck;
 import com.jamierf.mediamanager.healthchecks.ParserHealthcheck;
+import com.jamierf.mediamanager.io.HostRateLimiter;
 import com.jamierf.mediamanager.io.StaticAssetForwarder;
-import com.jamierf.mediamanager.io.retry.DelayedJerseyRetryManager;
+import com.jamierf.mediamanager.io.retry.HedgingRetryManager;
 import com.jamierf.mediamanager.io.retry.RetryManager;
 import com.jamierf.mediamanager.listeners.CalendarItemListener;
 import com.jamierf.mediamanager.listeners.DownloadableItemListener;
@@ -26,6 +37,8 @@ import com.jamierf.mediamanager.listeners.MediaFileListener;
 import com.jamierf.mediamanager.managers.BackfillManager;
 import com.jamierf.mediamanager.managers.DownloadDirManager;
 import com.jamierf.mediamanager.managers.FeedManager;
+import com.jamierf.mediamanager.managers.InstrumentedThreadPool;
+import com.jamierf.mediamanager.managers.SearchCache;
 import com.jamierf.mediamanager.parsing.EpisodeNameParser;
 import com.jamierf.mediamanager.parsing.FeedParser;
 import com.jamierf.mediamanager.parsing.ical.CalendarItem;
@@ -37,7 +50,6 @@ import com.jamierf.mediamanager.parsing.search.SearchParser;
 import com.jamierf.mediamanager.resources.BackfillResource;
 import com.jamierf.mediamanager.resources.MediaManagerResource;
 import com.jamierf.mediamanager.resources.ShowsResource;
-import com.microsoft.windowsazure.services.core.storage.StorageException;
 import com.sun.jersey.api.client.Client;
 import io.dropwizard.Application;
 import io.dropwizard.assets.AssetsBundle;
@@ -53,25 +65,59 @@ import java.io.File;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 public class MediaManager extends Application<MediaManagerConfiguration> {
 
     private static final Logger LOG = LoggerFactory.getLogger(MediaManager.class);
 
+    private static final int DEFAULT_EXPECTED_FILES = 100000;
+    private static final double FILE_FILTER_FPP = 0.01;
+
 	public static void main(String[] args) throws Exception {
         new MediaManager().run(args);
 	}
 
-    private static ShowDatabase buildShowDatabase(final DatabaseConfiguration config, final MetricRegistry metrics) throws StorageException {
-        return new AzureTableShowDatabase(config.getString("accountName"), config.getString("accountKey"), metrics);
+    private static File getStateDir(final MediaManagerConfiguration config, final String name) {
+        return config.getStateDir() == null ? null : new File(config.getStateDir(), name);
     }
 
-    private static FileDatabase buildFileDatabase(final DatabaseConfiguration config, final MetricRegistry metrics) throws StorageException {
-        return new AzureTableFileDatabase(config.getString("accountName"), config.getString("accountKey"), metrics);
+    private static File getSnapshotFile(final DatabaseConfiguration config, final String name) {
+        // Local databases are already on disk, so gain nothing from a snapshot
+        final File path = config.getFile("path");
+        return config.getType() == DatabaseConfiguration.Type.LOCAL || path == null ? null : new File(path, name + ".snapshot");
     }
 
-    private static QualityDatabase buildQualityDatabase(final DatabaseConfiguration config, final MetricRegistry metrics) throws StorageException {
-        return new AzureTableQualityDatabase(config.getString("accountName"), config.getString("accountKey"), metrics);
+    private static ShowDatabase buildShowDatabase(final DatabaseConfiguration config, final MetricRegistry metrics) throws IOException {
+        switch (config.getType()) {
+            case LOCAL:
+                return new LocalShowDatabase(config.getFile("path"), config.getBoolean("sync", false));
+            default:
+                return new AzureTableShowDatabase(config.getString("accountName"), config.getString("accountKey"), metrics, config.getBoolean("migrate", false));
+        }
+    }
+
+    private static FileDatabase buildFileDatabase(final DatabaseConfiguration config, final MetricRegistry metrics) throws IOException {
+        switch (config.getType()) {
+            case LOCAL:
+                return new LocalFileDatabase(config.getFile("path"), config.getBoolean("sync", false));
+            default:
+                final FileDatabase files = new AzureTableFileDatabase(config.getString("accountName"), config.getString("accountKey"), metrics, config.getBoolean("migrate", false));
+
+                // Avoid remote lookups for files we have definitely never handled
+                final File path = config.getFile("path");
+                return new BloomFilterFileDatabase(files, path == null ? null : new File(path, "file.bloom"), config.getInt("expectedFiles", DEFAULT_EXPECTED_FILES), FILE_FILTER_FPP);
+        }
+    }
+
+    private static QualityDatabase buildQualityDatabase(final DatabaseConfiguration config, final MetricRegistry metrics) throws IOException {
+        switch (config.getType()) {
+            case LOCAL:
+                return new LocalQualityDatabase(config.getFile("path"), config.getBoolean("sync", false));
+            default:
+                final QualityDatabase quality = new AzureTableQualityDatabase(config.getString("accountName"), config.getString("accountKey"), metrics, config.getBoolean("migrate", false));
+                return new CachingQualityDatabase(quality, MediaManager.getSnapshotFile(config, "seen"));
+        }
     }
 
     private static QualityFilter buildQualityFilter(TorrentConfiguration config, final QualityDatabase db) {
@@ -86,8 +132,10 @@ public class MediaManager extends Application<MediaManagerConfiguration> {
         return new MediaFileListener(shows, config.getDestinationDir(), episodeNameParser);
     }
 
-    private static BackfillManager buildBackfillManager(TorrentConfiguration config, ShowDatabase shows, DownloadableItemListener downloadableItemListener, Client client, RetryManager retryManager) throws ClassNotFoundException {
-        final BackfillManager backfill = new BackfillManager(shows, config.getBackfillDelay());
+    private static BackfillManager buildBackfillManager(TorrentConfiguration config, ShowDatabase shows, DownloadableItemListener downloadableItemListener, Client client, RetryManager retryManager, File stateDir, MetricRegistry metrics) throws ClassNotFoundException, IOException {
+        final ExecutorService workerPool = new InstrumentedThreadPool(config.getBackfillWorkers(), metrics, MetricRegistry.name(BackfillManager.class, "workers"));
+        final SearchCache cache = new SearchCache(stateDir, config.getSearchCacheTtl(), config.getSearchCacheNegativeTtl(), config.getSearchCacheSize());
+        final BackfillManager backfill = new BackfillManager(shows, config.getBackfillDelay(), config.getBackfillConcurrency(), workerPool, cache);
         backfill.addListener(new DownloadableItemListenerProxy<SearchItem>(downloadableItemListener));
 
         // Load in all configured search parsers
@@ -102,8 +150,9 @@ public class MediaManager extends Application<MediaManagerConfiguration> {
         return backfill;
     }
 
-    private static FeedManager<CalendarItem> buildCalendarFeedManager(CalendarConfiguration config, ShowDatabase shows, BackfillManager backfillManager, Client client, RetryManager retryManager, EpisodeNameParser episodeNameParser) throws ClassNotFoundException {
-        final FeedManager<CalendarItem> calendarFeed = new FeedManager<>(config.getUpdateDelay());
+    private static FeedManager<CalendarItem> buildCalendarFeedManager(CalendarConfiguration config, ShowDatabase shows, BackfillManager backfillManager, Client client, RetryManager retryManager, EpisodeNameParser episodeNameParser, File stateDir, MetricRegistry metrics) throws ClassNotFoundException, IOException {
+        final ExecutorService workerPool = new InstrumentedThreadPool(config.getWorkers(), metrics, MetricRegistry.name(FeedManager.class, "calendar-feed", "workers"));
+        final FeedManager<CalendarItem> calendarFeed = new FeedManager<>(config.getMinUpdateDelay(), config.getMaxUpdateDelay(), config.getFetchTimeout(), stateDir, config.getSeenItemsSize(), workerPool);
         final CalendarItemListener calendarListener = new CalendarItemListener(shows, backfillManager, episodeNameParser);
 
         calendarFeed.addListener(calendarListener);
@@ -113,6 +162,7 @@ public class MediaManager extends Application<MediaManagerConfiguration> {
         for (String name : icalParsers.keySet()) {
             final ParserConfiguration parserConfig = icalParsers.get(name);
             final CalendarParser parser = FeedParser.getInstance(CalendarParser.class, name, client, retryManager, parserConfig);
+            parser.setHorizon(config.getPastHorizon(), config.getFutureHorizon());
 
             calendarFeed.addParser(parser);
         }
@@ -124,8 +174,9 @@ public class MediaManager extends Application<MediaManagerConfiguration> {
         return new WatchDirDownloader(client, retryManager, config.getWatchDir());
     }
 
-    private static FeedManager<RSSItem> buildTorrentFeedManager(TorrentConfiguration config, DownloadableItemListener downloadableItemListener, Client client, RetryManager retryManager) throws ClassNotFoundException {
-        final FeedManager<RSSItem> torrentFeed = new FeedManager<>(config.getUpdateDelay());
+    private static FeedManager<RSSItem> buildTorrentFeedManager(TorrentConfiguration config, DownloadableItemListener downloadableItemListener, Client client, RetryManager retryManager, File stateDir, MetricRegistry metrics) throws ClassNotFoundException, IOException {
+        final ExecutorService workerPool = new InstrumentedThreadPool(config.getWorkers(), metrics, MetricRegistry.name(FeedManager.class, "torrent-feed", "workers"));
+        final FeedManager<RSSItem> torrentFeed = new FeedManager<>(config.getMinUpdateDelay(), config.getMaxUpdateDelay(), config.getFetchTimeout(), stateDir, config.getSeenItemsSize(), workerPool);
         torrentFeed.addListener(new DownloadableItemListenerProxy<RSSItem>(downloadableItemListener));
 
         // Load in all configured torrent parsers
@@ -177,17 +228,19 @@ public class MediaManager extends Application<MediaManagerConfiguration> {
     @Override
     public void run(MediaManagerConfiguration config, Environment environment) throws Exception {
         final JerseyClientBuilder clientFactory = new JerseyClientBuilder(environment).using(config.getHttpClientConfiguration());
-        final RetryManager retryManager = new DelayedJerseyRetryManager(environment.metrics(), MediaManager.class, config.getRetryConfiguration());
+        final HostRateLimiter rateLimiter = new HostRateLimiter(environment.metrics(), config.getRateLimitConfiguration());
+        final HedgingRetryManager retryManager = new HedgingRetryManager(environment.metrics(), MediaManager.class, config.getRetryConfiguration(), rateLimiter);
+        environment.lifecycle().manage(retryManager);
 
         // Initialise the shows database - this stores what episodes we should be watching for
-        final ShowDatabase shows = MediaManager.buildShowDatabase(config.getDatabaseConfiguration(), environment.metrics());
+        final ShowDatabase shows = new InstrumentedShowDatabase(new CachingShowDatabase(MediaManager.buildShowDatabase(config.getDatabaseConfiguration(), environment.metrics()), MediaManager.getSnapshotFile(config.getDatabaseConfiguration(), "show")), environment.metrics());
         environment.lifecycle().manage(shows);
 
         // Initialise the shows database - this stores what files have already been handled
-        final FileDatabase files = MediaManager.buildFileDatabase(config.getDatabaseConfiguration(), environment.metrics());
+        final FileDatabase files = new InstrumentedFileDatabase(MediaManager.buildFileDatabase(config.getDatabaseConfiguration(), environment.metrics()), environment.metrics());
         environment.lifecycle().manage(files);
 
-        final QualityDatabase quality = MediaManager.buildQualityDatabase(config.getDatabaseConfiguration(), environment.metrics());
+        final QualityDatabase quality = new InstrumentedQualityDatabase(MediaManager.buildQualityDatabase(config.getDatabaseConfiguration(), environment.metrics()), environment.metrics());
         environment.lifecycle().manage(quality);
 
         // Initialise the torrent file manager - this is responsible for taking a torrent file URL and downloading the torrent contents
@@ -207,15 +260,15 @@ public class MediaManager extends Application<MediaManagerConfiguration> {
         final MediaFileListener mediaListener = MediaManager.buildMediaListener(shows, config.getFileConfiguration(), episodeNameParser);
 
         // Initialise the backfill manager - this searches for missing episodes on demand
-        final BackfillManager backfillManager = MediaManager.buildBackfillManager(config.getTorrentConfiguration(), shows, downloadableListener, clientFactory.build("backfill"), retryManager);
+        final BackfillManager backfillManager = MediaManager.buildBackfillManager(config.getTorrentConfiguration(), shows, downloadableListener, clientFactory.build("backfill"), retryManager, MediaManager.getStateDir(config, "search-cache"), environment.metrics());
         environment.lifecycle().manage(backfillManager);
 
         // Initialise the calendar feed manager - this periodically parses the known calendar feeds to look for new episodes we want to watch for
-        final FeedManager<CalendarItem> calendarFeedManager = MediaManager.buildCalendarFeedManager(config.getCalendarConfiguration(), shows, backfillManager, clientFactory.build("calendar-feed"), retryManager, episodeNameParser);
+        final FeedManager<CalendarItem> calendarFeedManager = MediaManager.buildCalendarFeedManager(config.getCalendarConfiguration(), shows, backfillManager, clientFactory.build("calendar-feed"), retryManager, episodeNameParser, MediaManager.getStateDir(config, "calendar-feed"), environment.metrics());
         environment.lifecycle().manage(calendarFeedManager);
 
         // Initialise the torrent feed manager - this periodically parses the known torrent RSS feeds to look for new episodes we are watching for
-        final FeedManager<RSSItem> torrentFeedManager = MediaManager.buildTorrentFeedManager(config.getTorrentConfiguration(), downloadableListener, clientFactory.build("torrent-feed"), retryManager);
+        final FeedManager<RSSItem> torrentFeedManager = MediaManager.buildTorrentFeedManager(config.getTorrentConfiguration(), downloadableListener, clientFactory.build("torrent-feed"), retryManager, MediaManager.getStateDir(config, "torrent-feed"), environment.metrics());
         environment.lifecycle().manage(torrentFeedManager);
 
         // Initialise the download dir manager - this listens for new files in the download directory and moves the wanted ones to a specified directory
@@ -234,5 +287,6 @@ public class MediaManager extends Application<MediaManagerConfiguration> {
         // Add ping health checks for torrents, calendar, and backfill
         environment.healthChecks().register("parsers", new ParserHealthcheck(config.getHttpClientConfiguration().getConnectionTimeout(), torrentFeedManager, calendarFeedManager, backfillManager));
         environment.healthChecks().register("database", new DatabaseHealthcheck(shows));
+        environment.healthChecks().register("circuits", new CircuitBreakerHealthcheck(retryManager));
     }
 }
@@ -2,6 +2,7 @@ package com.jamierf.mediamanager.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
 
 import java.util.Collections;
 import java.util.Map;
@@ -11,12 +12,33 @@ public class CalendarConfiguration {
     @JsonProperty
     private Duration updateDelay = Duration.hours(12);
 
+    @JsonProperty
+    private Duration minUpdateDelay;
+
+    @JsonProperty
+    private Duration maxUpdateDelay;
+
+    @JsonProperty
+    private Duration fetchTimeout = Duration.minutes(2);
+
+    @JsonProperty
+    private Size seenItemsSize = Size.kilobytes(256);
+
     @JsonProperty
     private Duration beforeAirDuration = Duration.hours(2);
 
     @JsonProperty
     private Duration afterAirDuration = Duration.days(1);
 
+    @JsonProperty
+    private Duration pastHorizon = Duration.days(30);
+
+    @JsonProperty
+    private Duration futureHorizon = Duration.days(365);
+
+    @JsonProperty
+    private WorkerPoolConfiguration workers = new WorkerPoolConfiguration();
+
     @JsonProperty
     private Map<String, ParserConfiguration> parsers = Collections.emptyMap();
 
@@ -24,6 +46,22 @@ public class CalendarConfiguration {
         return updateDelay;
     }
 
+    public Duration getMinUpdateDelay() {
+        return minUpdateDelay == null ? updateDelay : minUpdateDelay;
+    }
+
+    public Duration getMaxUpdateDelay() {
+        return maxUpdateDelay == null ? updateDelay : maxUpdateDelay;
+    }
+
+    public Duration getFetchTimeout() {
+        return fetchTimeout;
+    }
+
+    public Size getSeenItemsSize() {
+        return seenItemsSize;
+    }
+
     public Duration getBeforeAirDuration() {
         return beforeAirDuration;
     }
@@ -32,6 +70,18 @@ public class CalendarConfiguration {
         return afterAirDuration;
     }
 
+    public Duration getPastHorizon() {
+        return pastHorizon;
+    }
+
+    public Duration getFutureHorizon() {
+        return futureHorizon;
+    }
+
+    public WorkerPoolConfiguration getWorkers() {
+        return workers;
+    }
+
     public Map<String, ParserConfiguration> getParsers() {
         return parsers;
     }
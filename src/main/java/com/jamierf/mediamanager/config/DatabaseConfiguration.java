@@ -5,10 +5,29 @@ import java.util.HashMap;
 
 public class DatabaseConfiguration extends HashMap<String, Object> {
 
+    public enum Type {
+        AZURE, LOCAL
+    }
+
+    public Type getType() {
+        final String type = this.getString("type");
+        return type == null ? Type.AZURE : Type.valueOf(type.toUpperCase());
+    }
+
     public long getLong(String key) {
         return (Long) super.get(key);
     }
 
+    public boolean getBoolean(String key, boolean defaultValue) {
+        final Object value = super.get(key);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        final Object value = super.get(key);
+        return value == null ? defaultValue : ((Number) value).intValue();
+    }
+
     public String getString(String key) {
         return (String) super.get(key);
     }
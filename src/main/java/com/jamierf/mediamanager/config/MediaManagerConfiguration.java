@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 import io.dropwizard.client.JerseyClientConfiguration;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.Map;
 
@@ -15,6 +16,9 @@ public class MediaManagerConfiguration extends Configuration {
     @JsonProperty
     private RetryConfiguration retryManager = new RetryConfiguration();
 
+    @JsonProperty
+    private RateLimitConfiguration rateLimits = new RateLimitConfiguration();
+
     @JsonProperty
     private DatabaseConfiguration database = new DatabaseConfiguration();
 
@@ -30,6 +34,9 @@ public class MediaManagerConfiguration extends Configuration {
     @JsonProperty
     private Map<String, String> aliases = Collections.emptyMap();
 
+    @JsonProperty
+    private File stateDir;
+
     public JerseyClientConfiguration getHttpClientConfiguration() {
         return httpClient;
     }
@@ -38,6 +45,10 @@ public class MediaManagerConfiguration extends Configuration {
         return retryManager;
     }
 
+    public RateLimitConfiguration getRateLimitConfiguration() {
+        return rateLimits;
+    }
+
     public DatabaseConfiguration getDatabaseConfiguration() {
         return database;
     }
@@ -57,4 +68,8 @@ public class MediaManagerConfiguration extends Configuration {
     public Map<String, String> getAliases() {
         return aliases;
     }
+
+    public File getStateDir() {
+        return stateDir;
+    }
 }
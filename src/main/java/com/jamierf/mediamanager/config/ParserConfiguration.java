@@ -1,5 +1,7 @@
 package com.jamierf.mediamanager.config;
 
+import io.dropwizard.util.Size;
+
 import java.util.HashMap;
 
 public class ParserConfiguration extends HashMap<String, Object> {
@@ -11,4 +13,9 @@ public class ParserConfiguration extends HashMap<String, Object> {
     public String getString(String key) {
         return (String) super.get(key);
     }
+
+    public Size getSize(String key, Size defaultValue) {
+        final String value = this.getString(key);
+        return value == null ? defaultValue : Size.parse(value);
+    }
 }
@@ -0,0 +1,23 @@
+package com.jamierf.mediamanager.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class RateLimitConfiguration {
+
+    @JsonProperty
+    private double defaultRate = 0; // requests per second, or unlimited if zero
+
+    @JsonProperty
+    private Map<String, Double> hosts = Collections.emptyMap();
+
+    public double getDefaultRate() {
+        return defaultRate;
+    }
+
+    public Map<String, Double> getHosts() {
+        return hosts;
+    }
+}
@@ -2,6 +2,7 @@ package com.jamierf.mediamanager.config;
 
 import com.google.common.collect.ImmutableSet;
 import com.jamierf.mediamanager.io.retry.JerseyRetryManager;
+import com.jamierf.mediamanager.io.retry.RetryManager;
 import io.dropwizard.util.Duration;
 
 public class RetryConfiguration {
@@ -18,6 +19,20 @@ public class RetryConfiguration {
 
     private boolean randomiseWait = true;
 
+    private int failureThreshold = 5;
+
+    private Duration openDuration = Duration.minutes(5);
+
+    private boolean hedge = true;
+
+    private double hedgePercentile = 0.95;
+
+    private double retryBudgetRatio = 0.2;
+
+    private int retryBudgetReserve = 10;
+
+    private int threads = RetryManager.DEFAULT_THREADS;
+
     public int getMaxRetries() {
         return maxRetries;
     }
@@ -41,4 +56,32 @@ public class RetryConfiguration {
     public boolean isRandomiseWait() {
         return randomiseWait;
     }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    public boolean isHedge() {
+        return hedge;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    public int getRetryBudgetReserve() {
+        return retryBudgetReserve;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
 }
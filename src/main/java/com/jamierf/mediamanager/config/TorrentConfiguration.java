@@ -3,6 +3,7 @@ package com.jamierf.mediamanager.config;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.jamierf.mediamanager.parsing.EpisodeNameParser;
 import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
 
 import javax.validation.constraints.NotNull;
 import java.io.File;
@@ -19,9 +20,33 @@ public class TorrentConfiguration {
     @JsonProperty
     private Duration updateDelay = Duration.minutes(15);
 
+    @JsonProperty
+    private Duration minUpdateDelay;
+
+    @JsonProperty
+    private Duration maxUpdateDelay;
+
+    @JsonProperty
+    private Duration fetchTimeout = Duration.minutes(2);
+
+    @JsonProperty
+    private Size seenItemsSize = Size.kilobytes(256);
+
     @JsonProperty
     private Duration backfillDelay = Duration.days(7);
 
+    @JsonProperty
+    private int backfillConcurrency = 2; // Searches in flight at once per tracker
+
+    @JsonProperty
+    private Duration searchCacheTtl = Duration.hours(1);
+
+    @JsonProperty
+    private Duration searchCacheNegativeTtl = Duration.minutes(15);
+
+    @JsonProperty
+    private Size searchCacheSize = Size.megabytes(16);
+
     @JsonProperty
     private Set<String> primaryQualities = EpisodeNameParser.EPISODE_QUALITIES;
 
@@ -31,6 +56,12 @@ public class TorrentConfiguration {
     @JsonProperty
     private Set<String> secondaryQualities = Collections.emptySet();
 
+    @JsonProperty
+    private WorkerPoolConfiguration workers = new WorkerPoolConfiguration();
+
+    @JsonProperty
+    private WorkerPoolConfiguration backfillWorkers = new WorkerPoolConfiguration();
+
     @JsonProperty
     private Map<String, ParserConfiguration> feeders = Collections.emptyMap();
 
@@ -45,10 +76,42 @@ public class TorrentConfiguration {
         return updateDelay;
     }
 
+    public Duration getMinUpdateDelay() {
+        return minUpdateDelay == null ? updateDelay : minUpdateDelay;
+    }
+
+    public Duration getMaxUpdateDelay() {
+        return maxUpdateDelay == null ? updateDelay : maxUpdateDelay;
+    }
+
+    public Duration getFetchTimeout() {
+        return fetchTimeout;
+    }
+
+    public Size getSeenItemsSize() {
+        return seenItemsSize;
+    }
+
     public Duration getBackfillDelay() {
         return backfillDelay;
     }
 
+    public int getBackfillConcurrency() {
+        return backfillConcurrency;
+    }
+
+    public Duration getSearchCacheTtl() {
+        return searchCacheTtl;
+    }
+
+    public Duration getSearchCacheNegativeTtl() {
+        return searchCacheNegativeTtl;
+    }
+
+    public Size getSearchCacheSize() {
+        return searchCacheSize;
+    }
+
     public Set<String> getPrimaryQualities() {
         return primaryQualities;
     }
@@ -61,6 +124,14 @@ public class TorrentConfiguration {
         return secondaryQualities;
     }
 
+    public WorkerPoolConfiguration getWorkers() {
+        return workers;
+    }
+
+    public WorkerPoolConfiguration getBackfillWorkers() {
+        return backfillWorkers;
+    }
+
     public Map<String, ParserConfiguration> getFeeders() {
         return feeders;
     }
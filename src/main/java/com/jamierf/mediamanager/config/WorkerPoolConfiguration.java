@@ -0,0 +1,31 @@
+package com.jamierf.mediamanager.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class WorkerPoolConfiguration {
+
+    public enum SaturationPolicy {
+        BLOCK, CALLER_RUNS, DISCARD, DISCARD_OLDEST
+    }
+
+    @JsonProperty
+    private int threads = 4;
+
+    @JsonProperty
+    private int queueSize = 1000;
+
+    @JsonProperty
+    private SaturationPolicy saturationPolicy = SaturationPolicy.BLOCK;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public SaturationPolicy getSaturationPolicy() {
+        return saturationPolicy;
+    }
+}
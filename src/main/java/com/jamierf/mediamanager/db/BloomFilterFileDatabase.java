@@ -0,0 +1,208 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bloom filter in front of another {@link FileDatabase}. Names the filter has definitely never seen are
+ * reported as unhandled without asking the underlying database, only possible hits are looked up.
+ *
+ * The filter is written to disk on {@link #stop()} and read back on {@link #start()}, then rebuilt from
+ * the underlying database in the background. A filter file is deleted once loaded, so one left over from
+ * a crash (which might be missing recently handled names) is never trusted. Until a filter is available
+ * every lookup goes to the underlying database.
+ */
+public class BloomFilterFileDatabase implements FileDatabase, CachingDatabase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BloomFilterFileDatabase.class);
+
+    private static BloomFilter<CharSequence> createFilter(int expectedInsertions, double fpp) {
+        return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, fpp);
+    }
+
+    private final FileDatabase delegate;
+    private final File file;
+    private final int expectedInsertions;
+    private final double fpp;
+    private final ExecutorService rebuildPool;
+    private final Counter lookups;
+    private final Counter hits;
+
+    private volatile BloomFilter<CharSequence> filter;
+    private volatile BloomFilter<CharSequence> rebuilding;
+
+    public BloomFilterFileDatabase(FileDatabase delegate, File file, int expectedInsertions, double fpp) {
+        this.delegate = delegate;
+        this.file = file;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+
+        rebuildPool = Executors.newSingleThreadExecutor();
+        lookups = new Counter();
+        hits = new Counter();
+    }
+
+    private static void put(BloomFilter<CharSequence> target, String name) {
+        if (target == null)
+            return;
+
+        synchronized (target) {
+            target.put(name);
+        }
+    }
+
+    @Override
+    public boolean addHandled(String name) throws IOException {
+        // Add to the filter first, a false positive is harmless but a false negative is not
+        BloomFilterFileDatabase.put(filter, name);
+
+        final boolean added = delegate.addHandled(name);
+
+        // A rebuild may have read the handled names before this one was added, so add it to the
+        // replacement too. Once the rebuild is done the replacement is the filter.
+        BloomFilterFileDatabase.put(rebuilding, name);
+        BloomFilterFileDatabase.put(filter, name);
+
+        return added;
+    }
+
+    @Override
+    public boolean isHandled(String name) throws IOException {
+        lookups.inc();
+
+        final BloomFilter<CharSequence> current = filter;
+        if (current != null) {
+            synchronized (current) {
+                if (!current.mightContain(name)) {
+                    hits.inc();
+                    return false;
+                }
+            }
+        }
+
+        return delegate.isHandled(name);
+    }
+
+    @Override
+    public Collection<String> getAllHandled() throws IOException {
+        return delegate.getAllHandled();
+    }
+
+    @Override
+    public RatioGauge getHitRatio() {
+        return new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), lookups.getCount());
+            }
+        };
+    }
+
+    private void load() {
+        if (file == null || !file.isFile())
+            return;
+
+        try (final InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            @SuppressWarnings("unchecked")
+            final BloomFilter<CharSequence> loaded = (BloomFilter<CharSequence>) new ObjectInputStream(in).readObject();
+
+            filter = loaded;
+            LOG.debug("Loaded file filter from {}", file);
+        }
+        catch (IOException | ClassNotFoundException e) {
+            LOG.warn("Failed to load file filter from " + file, e);
+        }
+
+        if (!file.delete())
+            LOG.warn("Failed to remove loaded file filter {}", file);
+    }
+
+    private void save() {
+        final BloomFilter<CharSequence> current = filter;
+        if (file == null || current == null)
+            return;
+
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                synchronized (current) {
+                    out.writeObject(current);
+                }
+            }
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("Saved file filter to {}", file);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to save file filter to " + file, e);
+        }
+    }
+
+    private void rebuild() throws IOException {
+        int capacity = expectedInsertions;
+        while (true) {
+            // Publish the replacement before reading the handled names, so none added meanwhile are missed
+            final BloomFilter<CharSequence> replacement = BloomFilterFileDatabase.createFilter(capacity, fpp);
+            rebuilding = replacement;
+
+            final Collection<String> names = delegate.getAllHandled();
+
+            // Leave plenty of headroom so the false positive rate holds as more files are handled
+            if (names.size() * 2 > capacity) {
+                capacity = names.size() * 2;
+                continue;
+            }
+
+            synchronized (replacement) {
+                for (String name : names)
+                    replacement.put(name);
+            }
+
+            filter = replacement;
+            rebuilding = null;
+
+            LOG.info("Rebuilt file filter from {} handled files", names.size());
+            return;
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        delegate.start();
+
+        this.load();
+
+        rebuildPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuild();
+                }
+                catch (Exception e) {
+                    LOG.error("Failed to rebuild file filter", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void stop() throws Exception {
+        rebuildPool.shutdownNow();
+
+        delegate.stop();
+
+        this.save();
+    }
+}
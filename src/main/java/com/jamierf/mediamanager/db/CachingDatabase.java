@@ -0,0 +1,13 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.RatioGauge;
+
+/**
+ * A database which answers some calls from a cache, rather than the database behind it.
+ */
+public interface CachingDatabase {
+    /**
+     * @return the share of calls answered without going to the database behind the cache
+     */
+    public RatioGauge getHitRatio();
+}
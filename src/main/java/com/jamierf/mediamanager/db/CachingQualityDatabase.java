@@ -0,0 +1,141 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.codec.Codec;
+import com.jamierf.mediamanager.models.codec.NameCodec;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache in front of another {@link QualityDatabase}. The time a name was first seen never changes once
+ * recorded, so cached entries are never stale. Only the most recently used names are kept, names which
+ * fall out of the cache are looked up again.
+ *
+ * If given a snapshot file the cache is written there on {@link #stop()} and populated from it on
+ * {@link #start()}, so recently seen names do not have to be looked up again after a restart.
+ */
+public class CachingQualityDatabase implements QualityDatabase, CachingDatabase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingQualityDatabase.class);
+
+    private static final int CACHE_SIZE = 10000;
+
+    private static final Codec<Map.Entry<Name, DateTime>> ENTRY_CODEC = new Codec<Map.Entry<Name, DateTime>>() {
+        @Override
+        public byte[] encode(Map.Entry<Name, DateTime> entry) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeLong(entry.getValue().getMillis());
+            out.write(NameCodec.INSTANCE.encode(entry.getKey()));
+            out.flush();
+
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Map.Entry<Name, DateTime> decode(byte[] bytes) throws IOException {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+            final DateTime firstSeen = new DateTime(in.readLong());
+            final byte[] name = new byte[bytes.length - 8];
+            in.readFully(name);
+
+            return Maps.immutableEntry(NameCodec.INSTANCE.decode(name), firstSeen);
+        }
+    };
+
+    private final QualityDatabase delegate;
+    private final Cache<Name, DateTime> firstSeen;
+    private final Snapshot<Map.Entry<Name, DateTime>> snapshot;
+    private final Counter lookups;
+    private final Counter hits;
+
+    public CachingQualityDatabase(QualityDatabase delegate, File snapshotFile) {
+        this.delegate = delegate;
+
+        firstSeen = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+        snapshot = snapshotFile == null ? null : new Snapshot<>(snapshotFile, ENTRY_CODEC);
+        lookups = new Counter();
+        hits = new Counter();
+    }
+
+    @Override
+    public DateTime recordAndGetFirstSeen(Name name, DateTime now) {
+        lookups.inc();
+
+        final DateTime cached = firstSeen.getIfPresent(name);
+        if (cached != null) {
+            hits.inc();
+            return cached;
+        }
+
+        final DateTime recorded = delegate.recordAndGetFirstSeen(name, now);
+        firstSeen.put(name, recorded);
+        return recorded;
+    }
+
+    @Override
+    public Optional<DateTime> get(Name name) {
+        lookups.inc();
+
+        final DateTime cached = firstSeen.getIfPresent(name);
+        if (cached != null) {
+            hits.inc();
+            return Optional.of(cached);
+        }
+
+        final Optional<DateTime> result = delegate.get(name);
+        if (result.isPresent())
+            firstSeen.put(name, result.get());
+
+        return result;
+    }
+
+    @Override
+    public RatioGauge getHitRatio() {
+        return new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), lookups.getCount());
+            }
+        };
+    }
+
+    @Override
+    public void start() throws Exception {
+        delegate.start();
+
+        if (snapshot == null)
+            return;
+
+        final Optional<List<Map.Entry<Name, DateTime>>> entries = snapshot.read();
+        if (!entries.isPresent())
+            return;
+
+        for (Map.Entry<Name, DateTime> entry : entries.get())
+            firstSeen.put(entry.getKey(), entry.getValue());
+
+        LOG.info("Loaded {} first seen times from snapshot", firstSeen.size());
+    }
+
+    @Override
+    public void stop() throws Exception {
+        delegate.stop();
+
+        if (snapshot != null)
+            snapshot.write(ImmutableList.copyOf(firstSeen.asMap().entrySet()));
+    }
+}
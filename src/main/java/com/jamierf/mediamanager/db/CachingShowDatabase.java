@@ -0,0 +1,236 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jamierf.mediamanager.models.Episode;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.State;
+import com.jamierf.mediamanager.models.codec.EpisodeCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Write-through cache in front of another {@link ShowDatabase}. Every episode is held in memory, along
+ * with a separately maintained index of desired episodes, so reads never hit the underlying database.
+ *
+ * If given a snapshot file the cache is written there on {@link #stop()}, and populated from it on
+ * {@link #start()} so it is usable straight away. It is then reconciled with the underlying database in
+ * the background, without overwriting anything written since startup. The snapshot may be stale
+ * until then, so an episode it already holds is still added to the underlying database if missing there.
+ * Transitions are always left to the underlying database to decide.
+ */
+public class CachingShowDatabase implements ShowDatabase, CachingDatabase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingShowDatabase.class);
+
+    private final ShowDatabase delegate;
+    private final ConcurrentMap<Name, Episode> episodes;
+    private final ConcurrentMap<Name, Episode> desired;
+    private final Snapshot<Episode> snapshot;
+    private final ExecutorService reconcilePool;
+    private final Counter lookups;
+    private final Counter hits;
+
+    // Episodes written while reconciling, which the underlying database may not have returned yet
+    private Set<Name> reconcileWrites;
+    // Whether every episode in the underlying database is known to be cached
+    private volatile boolean reconciled;
+
+    public CachingShowDatabase(ShowDatabase delegate, File snapshotFile) {
+        this.delegate = delegate;
+
+        episodes = Maps.newConcurrentMap();
+        desired = Maps.newConcurrentMap();
+        snapshot = snapshotFile == null ? null : new Snapshot<>(snapshotFile, EpisodeCodec.INSTANCE);
+        reconcilePool = Executors.newSingleThreadExecutor();
+        lookups = new Counter();
+        hits = new Counter();
+    }
+
+    private void cache(Episode episode) {
+        final Name key = episode.getName();
+
+        if (reconcileWrites != null)
+            reconcileWrites.add(key);
+
+        episodes.put(key, episode);
+
+        if (episode.isDesired())
+            desired.put(key, episode);
+        else
+            desired.remove(key);
+    }
+
+    @Override
+    public synchronized boolean addOrUpdate(Episode episode) throws IOException {
+        if (!delegate.addOrUpdate(episode))
+            return false;
+
+        this.cache(episode);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean addIfNotExists(Episode episode) throws IOException {
+        lookups.inc();
+
+        // Once reconciled we hold every episode, so there is no need to ask the delegate about ones we know
+        if (reconciled && episodes.containsKey(episode.getName())) {
+            hits.inc();
+            return false;
+        }
+
+        if (!delegate.addIfNotExists(episode))
+            return false;
+
+        this.cache(episode);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean transition(Name name, State from, State to) throws IOException {
+        // Even if the cache disagrees, it may be stale, so let the delegate decide
+        if (!delegate.transition(name, from, to))
+            return false;
+
+        this.cache(new Episode(name, to));
+        return true;
+    }
+
+    @Override
+    public Optional<Episode> get(Name name) throws IOException {
+        lookups.inc();
+
+        final Episode episode = episodes.get(name);
+        if (episode != null)
+            hits.inc();
+
+        return Optional.fromNullable(episode);
+    }
+
+    @Override
+    public Collection<Episode> getAllEpisodes() throws IOException {
+        return ImmutableList.copyOf(episodes.values());
+    }
+
+    @Override
+    public Collection<Episode> getDesiredEpisodes() throws IOException {
+        return ImmutableList.copyOf(desired.values());
+    }
+
+    @Override
+    public RatioGauge getHitRatio() {
+        return new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), lookups.getCount());
+            }
+        };
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    private void reconcile() throws IOException {
+        final Map<Name, Episode> remote = Maps.newHashMap();
+        try {
+            for (Episode episode : delegate.getAllEpisodes())
+                remote.put(episode.getName(), episode);
+        }
+        catch (IOException | RuntimeException e) {
+            // Stop tracking writes, we will have to make do with the snapshot
+            synchronized (this) {
+                reconcileWrites = null;
+            }
+
+            throw e;
+        }
+
+        synchronized (this) {
+            int updated = 0;
+            int removed = 0;
+
+            for (Episode episode : remote.values()) {
+                if (reconcileWrites.contains(episode.getName()) || episode.equals(episodes.get(episode.getName())))
+                    continue;
+
+                this.cache(episode);
+                updated++;
+            }
+
+            for (Name name : ImmutableList.copyOf(episodes.keySet())) {
+                if (remote.containsKey(name) || reconcileWrites.contains(name))
+                    continue;
+
+                episodes.remove(name);
+                desired.remove(name);
+                removed++;
+            }
+
+            reconcileWrites = null;
+            reconciled = true;
+
+            LOG.info("Reconciled {} episodes with snapshot, {} updated, {} removed", episodes.size(), updated, removed);
+        }
+    }
+
+    @Override
+    public synchronized void start() throws Exception {
+        delegate.start();
+
+        final Optional<List<Episode>> snapshotted = snapshot == null ? Optional.<List<Episode>>absent() : snapshot.read();
+        if (!snapshotted.isPresent()) {
+            for (Episode episode : delegate.getAllEpisodes())
+                this.cache(episode);
+
+            reconciled = true;
+
+            LOG.info("Loaded {} episodes, {} desired", episodes.size(), desired.size());
+            return;
+        }
+
+        for (Episode episode : snapshotted.get())
+            this.cache(episode);
+
+        LOG.info("Loaded {} episodes from snapshot, {} desired", episodes.size(), desired.size());
+
+        reconcileWrites = Sets.newHashSet();
+        reconcilePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reconcile();
+                }
+                catch (Exception e) {
+                    LOG.error("Failed to reconcile episodes with snapshot", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        reconcilePool.shutdownNow();
+
+        delegate.stop();
+
+        if (snapshot != null)
+            snapshot.write(ImmutableList.copyOf(episodes.values()));
+    }
+}
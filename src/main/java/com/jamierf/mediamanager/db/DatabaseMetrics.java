@@ -0,0 +1,47 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.Collection;
+
+/**
+ * Per-method metrics for a database: a timer for every call, a meter of calls that threw, and a histogram
+ * of result sizes for calls returning a collection. Metrics are named after the database interface, so
+ * they stay the same whichever implementation is in use.
+ */
+public class DatabaseMetrics {
+
+    public static interface Operation<T, E extends Exception> {
+        public T call() throws E;
+    }
+
+    private final MetricRegistry metrics;
+    private final Class<?> klass;
+
+    public DatabaseMetrics(MetricRegistry metrics, Class<?> klass, Object delegate) {
+        this.metrics = metrics;
+        this.klass = klass;
+
+        if (delegate instanceof CachingDatabase)
+            metrics.register(MetricRegistry.name(klass, "cache", "hit-ratio"), ((CachingDatabase) delegate).getHitRatio());
+    }
+
+    public <T, E extends Exception> T time(String method, Operation<T, E> operation) throws E {
+        final Timer.Context context = metrics.timer(MetricRegistry.name(klass, method)).time();
+        try {
+            final T result = operation.call();
+            if (result instanceof Collection)
+                metrics.histogram(MetricRegistry.name(klass, method, "results")).update(((Collection<?>) result).size());
+
+            return result;
+        }
+        catch (Exception e) {
+            metrics.meter(MetricRegistry.name(klass, method, "errors")).mark();
+            throw e;
+        }
+        finally {
+            context.stop();
+        }
+    }
+}
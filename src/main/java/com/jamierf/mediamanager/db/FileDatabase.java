@@ -3,8 +3,10 @@ package com.jamierf.mediamanager.db;
 import io.dropwizard.lifecycle.Managed;
 
 import java.io.IOException;
+import java.util.Collection;
 
 public interface FileDatabase extends Managed {
     public boolean addHandled(String name) throws IOException;
     public boolean isHandled(String name) throws IOException;
+    public Collection<String> getAllHandled() throws IOException;
 }
@@ -0,0 +1,57 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.IOException;
+import java.util.Collection;
+
+public class InstrumentedFileDatabase implements FileDatabase {
+
+    private final FileDatabase delegate;
+    private final DatabaseMetrics metrics;
+
+    public InstrumentedFileDatabase(FileDatabase delegate, MetricRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = new DatabaseMetrics(metrics, FileDatabase.class, delegate);
+    }
+
+    @Override
+    public boolean addHandled(final String name) throws IOException {
+        return metrics.time("addHandled", new DatabaseMetrics.Operation<Boolean, IOException>() {
+            @Override
+            public Boolean call() throws IOException {
+                return delegate.addHandled(name);
+            }
+        });
+    }
+
+    @Override
+    public boolean isHandled(final String name) throws IOException {
+        return metrics.time("isHandled", new DatabaseMetrics.Operation<Boolean, IOException>() {
+            @Override
+            public Boolean call() throws IOException {
+                return delegate.isHandled(name);
+            }
+        });
+    }
+
+    @Override
+    public Collection<String> getAllHandled() throws IOException {
+        return metrics.time("getAllHandled", new DatabaseMetrics.Operation<Collection<String>, IOException>() {
+            @Override
+            public Collection<String> call() throws IOException {
+                return delegate.getAllHandled();
+            }
+        });
+    }
+
+    @Override
+    public void start() throws Exception {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        delegate.stop();
+    }
+}
@@ -0,0 +1,47 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.jamierf.mediamanager.models.Name;
+import org.joda.time.DateTime;
+
+public class InstrumentedQualityDatabase implements QualityDatabase {
+
+    private final QualityDatabase delegate;
+    private final DatabaseMetrics metrics;
+
+    public InstrumentedQualityDatabase(QualityDatabase delegate, MetricRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = new DatabaseMetrics(metrics, QualityDatabase.class, delegate);
+    }
+
+    @Override
+    public DateTime recordAndGetFirstSeen(final Name name, final DateTime now) {
+        return metrics.time("recordAndGetFirstSeen", new DatabaseMetrics.Operation<DateTime, RuntimeException>() {
+            @Override
+            public DateTime call() {
+                return delegate.recordAndGetFirstSeen(name, now);
+            }
+        });
+    }
+
+    @Override
+    public Optional<DateTime> get(final Name name) {
+        return metrics.time("get", new DatabaseMetrics.Operation<Optional<DateTime>, RuntimeException>() {
+            @Override
+            public Optional<DateTime> call() {
+                return delegate.get(name);
+            }
+        });
+    }
+
+    @Override
+    public void start() throws Exception {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        delegate.stop();
+    }
+}
@@ -0,0 +1,96 @@
+package com.jamierf.mediamanager.db;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.jamierf.mediamanager.models.Episode;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.State;
+
+import java.io.IOException;
+import java.util.Collection;
+
+public class InstrumentedShowDatabase implements ShowDatabase {
+
+    private final ShowDatabase delegate;
+    private final DatabaseMetrics metrics;
+
+    public InstrumentedShowDatabase(ShowDatabase delegate, MetricRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = new DatabaseMetrics(metrics, ShowDatabase.class, delegate);
+    }
+
+    @Override
+    public boolean addOrUpdate(final Episode episode) throws IOException {
+        return metrics.time("addOrUpdate", new DatabaseMetrics.Operation<Boolean, IOException>() {
+            @Override
+            public Boolean call() throws IOException {
+                return delegate.addOrUpdate(episode);
+            }
+        });
+    }
+
+    @Override
+    public boolean addIfNotExists(final Episode episode) throws IOException {
+        return metrics.time("addIfNotExists", new DatabaseMetrics.Operation<Boolean, IOException>() {
+            @Override
+            public Boolean call() throws IOException {
+                return delegate.addIfNotExists(episode);
+            }
+        });
+    }
+
+    @Override
+    public boolean transition(final Name name, final State from, final State to) throws IOException {
+        return metrics.time("transition", new DatabaseMetrics.Operation<Boolean, IOException>() {
+            @Override
+            public Boolean call() throws IOException {
+                return delegate.transition(name, from, to);
+            }
+        });
+    }
+
+    @Override
+    public Optional<Episode> get(final Name name) throws IOException {
+        return metrics.time("get", new DatabaseMetrics.Operation<Optional<Episode>, IOException>() {
+            @Override
+            public Optional<Episode> call() throws IOException {
+                return delegate.get(name);
+            }
+        });
+    }
+
+    @Override
+    public Collection<Episode> getAllEpisodes() throws IOException {
+        return metrics.time("getAllEpisodes", new DatabaseMetrics.Operation<Collection<Episode>, IOException>() {
+            @Override
+            public Collection<Episode> call() throws IOException {
+                return delegate.getAllEpisodes();
+            }
+        });
+    }
+
+    @Override
+    public Collection<Episode> getDesiredEpisodes() throws IOException {
+        return metrics.time("getDesiredEpisodes", new DatabaseMetrics.Operation<Collection<Episode>, IOException>() {
+            @Override
+            public Collection<Episode> call() throws IOException {
+                return delegate.getDesiredEpisodes();
+            }
+        });
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public void start() throws Exception {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        delegate.stop();
+    }
+}
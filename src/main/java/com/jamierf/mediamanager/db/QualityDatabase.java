@@ -6,6 +6,11 @@ import io.dropwizard.lifecycle.Managed;
 import org.joda.time.DateTime;
 
 public interface QualityDatabase extends Managed {
-    void update(final Name name, final DateTime now);
+    /**
+     * Records {@code now} as the first time {@code name} was seen, unless it has been seen before.
+     *
+     * @return the time {@code name} was first seen
+     */
+    DateTime recordAndGetFirstSeen(final Name name, final DateTime now);
     Optional<DateTime> get(final Name name);
 }
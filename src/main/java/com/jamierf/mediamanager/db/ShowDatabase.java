@@ -3,6 +3,7 @@ package com.jamierf.mediamanager.db;
 import com.google.common.base.Optional;
 import com.jamierf.mediamanager.models.Episode;
 import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.State;
 import io.dropwizard.lifecycle.Managed;
 
 import java.io.IOException;
@@ -11,6 +12,10 @@ import java.util.Collection;
 public interface ShowDatabase extends Managed {
     public boolean addOrUpdate(Episode episode) throws IOException;
     public boolean addIfNotExists(Episode episode) throws IOException;
+    /**
+     * Atomically moves an episode from one state to another, returning false if it was not in the {@code from} state.
+     */
+    public boolean transition(Name name, State from, State to) throws IOException;
     public Optional<Episode> get(Name name) throws IOException;
     public Collection<Episode> getAllEpisodes() throws IOException;
     public Collection<Episode> getDesiredEpisodes() throws IOException;
@@ -0,0 +1,87 @@
+package com.jamierf.mediamanager.db;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.jamierf.mediamanager.models.codec.Codec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A point in time copy of a database's contents, kept in a local file so a cache can be populated on
+ * startup without waiting for the remote store. Each item is stored as a length prefixed encoding from
+ * the given {@link Codec}. Files are replaced atomically, so a reader only ever sees a complete snapshot.
+ */
+public class Snapshot<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Snapshot.class);
+
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Codec<T> codec;
+
+    public Snapshot(File file, Codec<T> codec) {
+        this.file = file;
+        this.codec = codec;
+    }
+
+    /**
+     * @return every item in the snapshot, or absent if there is no usable snapshot
+     */
+    public Optional<List<T>> read() {
+        if (!file.isFile())
+            return Optional.absent();
+
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final int version = in.readInt();
+            if (version != VERSION) {
+                LOG.warn("Ignoring snapshot {} with unsupported version {}", file, version);
+                return Optional.absent();
+            }
+
+            final int count = in.readInt();
+            final ImmutableList.Builder<T> items = ImmutableList.builder();
+            for (int i = 0; i < count; i++) {
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                items.add(codec.decode(bytes));
+            }
+
+            LOG.debug("Read {} items from snapshot {}", count, file);
+            return Optional.<List<T>>of(items.build());
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to read snapshot " + file, e);
+            return Optional.absent();
+        }
+    }
+
+    public void write(Collection<T> items) {
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(VERSION);
+                out.writeInt(items.size());
+
+                for (T item : items) {
+                    final byte[] bytes = codec.encode(item);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("Wrote {} items to snapshot {}", items.size(), file);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to write snapshot " + file, e);
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package com.jamierf.mediamanager.db.azure;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Table;
-import com.microsoft.windowsazure.services.core.storage.StorageException;
-import com.yammer.collections.azure.util.AzureTables;
 
 import java.util.Collection;
 import java.util.Map;
@@ -13,49 +12,45 @@ public class AzureMap<K, V> implements Map<K, V> {
 
     private static final Boolean KEY = Boolean.TRUE;
 
-    private final Table<Boolean, K, V> table;
+    private final Supplier<Table<Boolean, K, V>> table;
 
-    public AzureMap(final String accountName, final String accountKey, final String tableName, final Class<K> keyClass, final Class<V> valueClass, final MetricRegistry metrics) throws StorageException {
-        table = AzureTables.clientForAccount(accountName, accountKey)
-                .tableWithName(tableName)
-                .createIfDoesNotExist()
-                .andAddMetrics(metrics)
-                .buildWithJsonSerialization(Boolean.class, keyClass, valueClass);
+    public AzureMap(final String accountName, final String accountKey, final String tableName, final Class<K> keyClass, final Class<V> valueClass, final MetricRegistry metrics) {
+        table = AzureTableSupplier.memoize(accountName, accountKey, tableName, Boolean.class, keyClass, valueClass, metrics);
     }
 
     @Override
     public int size() {
-        return table.row(KEY).size();
+        return table.get().row(KEY).size();
     }
 
     @Override
     public boolean isEmpty() {
-        return table.isEmpty();
+        return table.get().isEmpty();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return table.containsColumn(key);
+        return table.get().containsColumn(key);
     }
 
     @Override
     public boolean containsValue(Object value) {
-        return table.containsValue(value);
+        return table.get().containsValue(value);
     }
 
     @Override
     public V get(Object key) {
-        return table.get(KEY, key);
+        return table.get().get(KEY, key);
     }
 
     @Override
     public V put(K key, V value) {
-        return table.put(KEY, key, value);
+        return table.get().put(KEY, key, value);
     }
 
     @Override
     public V remove(Object key) {
-        return table.remove(KEY, key);
+        return table.get().remove(KEY, key);
     }
 
     @Override
@@ -67,21 +62,21 @@ public class AzureMap<K, V> implements Map<K, V> {
 
     @Override
     public void clear() {
-        table.clear();
+        table.get().clear();
     }
 
     @Override
     public Set<K> keySet() {
-        return table.columnKeySet();
+        return table.get().columnKeySet();
     }
 
     @Override
     public Collection<V> values() {
-        return table.values();
+        return table.get().values();
     }
 
     @Override
     public Set<Entry<K, V>> entrySet() {
-        return table.row(KEY).entrySet();
+        return table.get().row(KEY).entrySet();
     }
 }
@@ -0,0 +1,33 @@
+package com.jamierf.mediamanager.db.azure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Moves every entry of a table using the old single partition layout in to a {@link PartitionedAzureMap}.
+ */
+public final class AzureMapMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AzureMapMigration.class);
+
+    public static <K, V> int migrate(Map<K, V> legacy, Map<K, V> target) {
+        if (legacy.isEmpty())
+            return 0;
+
+        int migrated = 0;
+        for (Map.Entry<K, V> entry : legacy.entrySet()) {
+            target.put(entry.getKey(), entry.getValue());
+            migrated++;
+        }
+
+        // Only clear the old table once everything has been copied
+        legacy.clear();
+
+        LOG.info("Migrated {} entries to partitioned table", migrated);
+        return migrated;
+    }
+
+    private AzureMapMigration() {}
+}
@@ -1,7 +1,6 @@
 package com.jamierf.mediamanager.db.azure;
 
 import com.codahale.metrics.MetricRegistry;
-import com.microsoft.windowsazure.services.core.storage.StorageException;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -14,8 +13,12 @@ public class AzureSet<K> implements Set<K> {
 
     private final Map<K, Boolean> map;
 
-    public AzureSet(final String accountName, final String accountKey, final String tableName, final Class<K> keyClass, final MetricRegistry metrics) throws StorageException {
-        map = new AzureMap<K, Boolean>(accountName, accountKey, tableName, keyClass, Boolean.class, metrics);
+    public AzureSet(final String accountName, final String accountKey, final String tableName, final Class<K> keyClass, final MetricRegistry metrics) {
+        this (new AzureMap<K, Boolean>(accountName, accountKey, tableName, keyClass, Boolean.class, metrics));
+    }
+
+    public AzureSet(final Map<K, Boolean> map) {
+        this.map = map;
     }
 
     @Override
@@ -1,20 +1,26 @@
 package com.jamierf.mediamanager.db.azure;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
 import com.jamierf.mediamanager.db.FileDatabase;
-import com.microsoft.windowsazure.services.core.storage.StorageException;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Set;
 
 public class AzureTableFileDatabase implements FileDatabase {
 
-    private static final String TABLE_NAME = "file";
+    private static final String TABLE_NAME = "filev2";
+    private static final String LEGACY_TABLE_NAME = "file";
 
+    private final PartitionedAzureMap<String, Boolean> table;
+    private final AzureMap<String, Boolean> legacy;
     private final Set<String> files;
 
-    public AzureTableFileDatabase(final String accountName, final String accountKey, final MetricRegistry metrics) throws StorageException {
-        files = new AzureSet<>(accountName, accountKey, TABLE_NAME, String.class, metrics);
+    public AzureTableFileDatabase(final String accountName, final String accountKey, final MetricRegistry metrics, final boolean migrate) {
+        table = new PartitionedAzureMap<>(accountName, accountKey, TABLE_NAME, String.class, Boolean.class, Partitioners.BY_PREFIX, metrics);
+        legacy = migrate ? new AzureMap<>(accountName, accountKey, LEGACY_TABLE_NAME, String.class, Boolean.class, metrics) : null;
+        files = new AzureSet<>(table);
     }
 
     @Override
@@ -29,8 +35,14 @@ public class AzureTableFileDatabase implements FileDatabase {
     }
 
     @Override
-    public void start() {
+    public Collection<String> getAllHandled() throws IOException {
+        return ImmutableSet.copyOf(files);
+    }
 
+    @Override
+    public void start() {
+        if (legacy != null)
+            AzureMapMigration.migrate(legacy, table);
     }
 
     @Override
@@ -5,24 +5,25 @@ import com.google.common.base.Optional;
 import com.jamierf.mediamanager.db.QualityDatabase;
 import com.jamierf.mediamanager.models.Name;
 import com.jamierf.mediamanager.util.TimestampToDateTimeFunction;
-import com.microsoft.windowsazure.services.core.storage.StorageException;
 import org.joda.time.DateTime;
 
-import java.util.Map;
-
 public class AzureTableQualityDatabase implements QualityDatabase {
 
-    private static final String TABLE_NAME = "seen";
+    private static final String TABLE_NAME = "seenv2";
+    private static final String LEGACY_TABLE_NAME = "seen";
 
-    private final Map<Name, Long> shows;
+    private final PartitionedAzureMap<Name, Long> shows;
+    private final AzureMap<Name, Long> legacy;
 
-    public AzureTableQualityDatabase(final String accountName, final String accountKey, final MetricRegistry metrics) throws StorageException {
-        shows = new AzureMap<>(accountName, accountKey, TABLE_NAME, Name.class, Long.class, metrics);
+    public AzureTableQualityDatabase(final String accountName, final String accountKey, final MetricRegistry metrics, final boolean migrate) {
+        shows = new PartitionedAzureMap<>(accountName, accountKey, TABLE_NAME, Name.class, Long.class, Partitioners.BY_TITLE, metrics);
+        legacy = migrate ? new AzureMap<>(accountName, accountKey, LEGACY_TABLE_NAME, Name.class, Long.class, metrics) : null;
     }
 
     @Override
-    public void update(final Name name, final DateTime time) {
-        shows.putIfAbsent(name, time.getMillis());
+    public DateTime recordAndGetFirstSeen(final Name name, final DateTime now) {
+        final Long firstSeen = shows.putIfAbsent(name, now.getMillis());
+        return firstSeen == null ? now : new DateTime(firstSeen);
     }
 
     @Override
@@ -32,7 +33,8 @@ public class AzureTableQualityDatabase implements QualityDatabase {
 
     @Override
     public void start() {
-
+        if (legacy != null)
+            AzureMapMigration.migrate(legacy, shows);
     }
 
     @Override
@@ -7,20 +7,22 @@ import com.google.common.collect.Collections2;
 import com.jamierf.mediamanager.db.ShowDatabase;
 import com.jamierf.mediamanager.models.Episode;
 import com.jamierf.mediamanager.models.Name;
-import com.microsoft.windowsazure.services.core.storage.StorageException;
+import com.jamierf.mediamanager.models.State;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.Map;
 
 public class AzureTableShowDatabase implements ShowDatabase {
 
-    private static final String TABLE_NAME = "show";
+    private static final String TABLE_NAME = "showv2";
+    private static final String LEGACY_TABLE_NAME = "show";
 
-    private final Map<Name, Episode> episodes;
+    private final PartitionedAzureMap<Name, Episode> episodes;
+    private final AzureMap<Name, Episode> legacy;
 
-    public AzureTableShowDatabase(final String accountName, final String accountKey, final MetricRegistry metrics) throws StorageException {
-        episodes = new AzureMap<>(accountName, accountKey, TABLE_NAME, Name.class, Episode.class, metrics);
+    public AzureTableShowDatabase(final String accountName, final String accountKey, final MetricRegistry metrics, final boolean migrate) {
+        episodes = new PartitionedAzureMap<>(accountName, accountKey, TABLE_NAME, Name.class, Episode.class, Partitioners.BY_TITLE, metrics);
+        legacy = migrate ? new AzureMap<>(accountName, accountKey, LEGACY_TABLE_NAME, Name.class, Episode.class, metrics) : null;
     }
 
     @Override
@@ -35,12 +37,12 @@ public class AzureTableShowDatabase implements ShowDatabase {
     public boolean addIfNotExists(Episode episode) throws IOException {
         final Name key = episode.getName();
 
-        if (!episodes.containsKey(key)) {
-            episodes.put(key, episode);
-            return true;
-        }
+        return episodes.putIfAbsent(key, episode) == null;
+    }
 
-        return false;
+    @Override
+    public boolean transition(Name name, State from, State to) throws IOException {
+        return episodes.replace(name, new Episode(name, from), new Episode(name, to));
     }
 
     @Override
@@ -70,7 +72,8 @@ public class AzureTableShowDatabase implements ShowDatabase {
 
     @Override
     public void start() {
-
+        if (legacy != null)
+            AzureMapMigration.migrate(legacy, episodes);
     }
 
     @Override
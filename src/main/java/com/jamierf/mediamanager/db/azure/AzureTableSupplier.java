@@ -0,0 +1,52 @@
+package com.jamierf.mediamanager.db.azure;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Table;
+import com.microsoft.windowsazure.services.core.storage.StorageException;
+import com.yammer.collections.azure.util.AzureTables;
+
+/**
+ * Connects to (and if needed creates) an Azure table the first time it is used, rather than when the
+ * database is constructed, so startup does not have to wait on a round trip per table.
+ */
+public class AzureTableSupplier<R, C, V> implements Supplier<Table<R, C, V>> {
+
+    public static <R, C, V> Supplier<Table<R, C, V>> memoize(final String accountName, final String accountKey, final String tableName, final Class<R> rowClass, final Class<C> columnClass, final Class<V> valueClass, final MetricRegistry metrics) {
+        return Suppliers.memoize(new AzureTableSupplier<>(accountName, accountKey, tableName, rowClass, columnClass, valueClass, metrics));
+    }
+
+    private final String accountName;
+    private final String accountKey;
+    private final String tableName;
+    private final Class<R> rowClass;
+    private final Class<C> columnClass;
+    private final Class<V> valueClass;
+    private final MetricRegistry metrics;
+
+    public AzureTableSupplier(final String accountName, final String accountKey, final String tableName, final Class<R> rowClass, final Class<C> columnClass, final Class<V> valueClass, final MetricRegistry metrics) {
+        this.accountName = accountName;
+        this.accountKey = accountKey;
+        this.tableName = tableName;
+        this.rowClass = rowClass;
+        this.columnClass = columnClass;
+        this.valueClass = valueClass;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Table<R, C, V> get() {
+        try {
+            return AzureTables.clientForAccount(accountName, accountKey)
+                    .tableWithName(tableName)
+                    .createIfDoesNotExist()
+                    .andAddMetrics(metrics)
+                    .buildWithJsonSerialization(rowClass, columnClass, valueClass);
+        }
+        catch (StorageException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.jamierf.mediamanager.db.azure;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+import com.google.common.collect.*;
+import com.google.common.util.concurrent.Striped;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A map stored in an Azure table, spread over partitions chosen by a partitioner function rather than
+ * a single partition. Point operations address a single partition, and whole-map reads make a single
+ * pass over the table, taking each entity's partition from the entity itself.
+ *
+ * {@link #putIfAbsent(Object, Object)} and {@link #replace(Object, Object, Object)} are atomic with
+ * respect to every other write made through this map.
+ */
+public class PartitionedAzureMap<K, V> implements Map<K, V> {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Supplier<Table<String, K, V>> table;
+    private final Class<K> keyClass;
+    private final Function<? super K, String> partitioner;
+    private final Striped<Lock> locks;
+
+    public PartitionedAzureMap(final String accountName, final String accountKey, final String tableName, final Class<K> keyClass, final Class<V> valueClass, final Function<? super K, String> partitioner, final MetricRegistry metrics) {
+        this.keyClass = keyClass;
+        this.partitioner = partitioner;
+
+        locks = Striped.lock(LOCK_STRIPES);
+        table = AzureTableSupplier.memoize(accountName, accountKey, tableName, String.class, keyClass, valueClass, metrics);
+    }
+
+    private String getPartition(Object key) {
+        return partitioner.apply(keyClass.cast(key));
+    }
+
+    private <T> List<T> scan(final Function<Table.Cell<String, K, V>, T> function) {
+        // Listing the partitions and then reading each would read every entity twice
+        final ImmutableList.Builder<T> results = ImmutableList.builder();
+        for (Table.Cell<String, K, V> cell : table.get().cellSet())
+            results.add(function.apply(cell));
+
+        return results.build();
+    }
+
+    @Override
+    public int size() {
+        return table.get().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return table.get().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keyClass.isInstance(key) && table.get().contains(this.getPartition(key), key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return this.values().contains(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        return keyClass.isInstance(key) ? table.get().get(this.getPartition(key), key) : null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        final Lock lock = locks.get(key);
+        lock.lock();
+
+        try {
+            return table.get().put(this.getPartition(key), key, value);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        final Lock lock = locks.get(key);
+        lock.lock();
+
+        try {
+            final V current = this.get(key);
+            if (current == null)
+                table.get().put(this.getPartition(key), key, value);
+
+            return current;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        final Lock lock = locks.get(key);
+        lock.lock();
+
+        try {
+            if (!Objects.equal(this.get(key), oldValue))
+                return false;
+
+            table.get().put(this.getPartition(key), key, newValue);
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!keyClass.isInstance(key))
+            return null;
+
+        final Lock lock = locks.get(key);
+        lock.lock();
+
+        try {
+            return table.get().remove(this.getPartition(key), key);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            this.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        table.get().clear();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return ImmutableSet.copyOf(this.scan(new Function<Table.Cell<String, K, V>, K>() {
+            @Override
+            public K apply(Table.Cell<String, K, V> cell) {
+                return cell.getColumnKey();
+            }
+        }));
+    }
+
+    @Override
+    public Collection<V> values() {
+        return this.scan(new Function<Table.Cell<String, K, V>, V>() {
+            @Override
+            public V apply(Table.Cell<String, K, V> cell) {
+                return cell.getValue();
+            }
+        });
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return ImmutableSet.copyOf(this.scan(new Function<Table.Cell<String, K, V>, Entry<K, V>>() {
+            @Override
+            public Entry<K, V> apply(Table.Cell<String, K, V> cell) {
+                return Maps.immutableEntry(cell.getColumnKey(), cell.getValue());
+            }
+        }));
+    }
+}
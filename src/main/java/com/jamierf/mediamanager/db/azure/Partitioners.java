@@ -0,0 +1,29 @@
+package com.jamierf.mediamanager.db.azure;
+
+import com.google.common.base.Function;
+import com.jamierf.mediamanager.models.Name;
+
+public final class Partitioners {
+
+    /**
+     * Partitions episodes by show title, so every episode of a show can be read with one partition query.
+     */
+    public static final Function<Name, String> BY_TITLE = new Function<Name, String>() {
+        @Override
+        public String apply(Name name) {
+            return name.getTitle() == null ? "" : name.getTitle().toLowerCase();
+        }
+    };
+
+    /**
+     * Partitions strings by their first character.
+     */
+    public static final Function<String, String> BY_PREFIX = new Function<String, String>() {
+        @Override
+        public String apply(String value) {
+            return value.isEmpty() ? "" : value.substring(0, 1).toLowerCase();
+        }
+    };
+
+    private Partitioners() {}
+}
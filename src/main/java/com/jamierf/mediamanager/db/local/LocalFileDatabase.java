@@ -0,0 +1,45 @@
+package com.jamierf.mediamanager.db.local;
+
+import com.google.common.collect.ImmutableSet;
+import com.jamierf.mediamanager.db.FileDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+public class LocalFileDatabase implements FileDatabase {
+
+    private static final String TABLE_NAME = "file";
+
+    private final LocalSet<String> files;
+
+    public LocalFileDatabase(final File dir, final boolean sync) throws IOException {
+        files = new LocalSet<>(dir, TABLE_NAME, String.class, sync);
+    }
+
+    @Override
+    public boolean addHandled(String name) throws IOException {
+        files.add(name);
+        return true;
+    }
+
+    @Override
+    public boolean isHandled(String name) throws IOException {
+        return files.contains(name);
+    }
+
+    @Override
+    public Collection<String> getAllHandled() throws IOException {
+        return ImmutableSet.copyOf(files);
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() throws IOException {
+        files.close();
+    }
+}
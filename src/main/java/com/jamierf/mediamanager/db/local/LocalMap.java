@@ -0,0 +1,391 @@
+package com.jamierf.mediamanager.db.local;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.jamierf.mediamanager.models.codec.Codec;
+import com.jamierf.mediamanager.models.codec.JsonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A map persisted to an append-only log file. Every mutation is appended as a record, and the log is
+ * replayed on startup to rebuild an in-memory index of key to record offset. Values are read back
+ * from a memory-mapped view of the log, so lookups never leave the process.
+ *
+ * Each record is laid out as: crc (int), key length (int), value length (int, -1 for a removal), key, value.
+ * A torn or corrupt record at the tail of the log (i.e. from a crash mid-write) is truncated during replay.
+ *
+ * The log is kept below 2GB, the most a single mapping can address. An append which would go past that
+ * compacts the log first, and fails if the live entries alone don't leave room for it. Records are only
+ * forced to disk as they are written if sync is set, otherwise a crash of the machine (but not of the
+ * process) may lose the last few writes. Like {@link java.util.concurrent.ConcurrentMap}, null values are
+ * not allowed.
+ */
+public class LocalMap<K, V> implements Map<K, V>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalMap.class);
+
+    private static final int HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+    private static final long MAX_LENGTH = Integer.MAX_VALUE;
+
+    private final File file;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final boolean sync;
+    private final long maxLength;
+    private final Map<K, Long> index;
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long length;
+
+    public LocalMap(final File dir, final String name, final Class<K> keyClass, final Class<V> valueClass, final boolean sync) throws IOException {
+        this(dir, name, new JsonCodec<>(keyClass), new JsonCodec<>(valueClass), sync);
+    }
+
+    public LocalMap(final File dir, final String name, final Codec<K> keyCodec, final Codec<V> valueCodec, final boolean sync) throws IOException {
+        this(dir, name, keyCodec, valueCodec, sync, MAX_LENGTH);
+    }
+
+    LocalMap(final File dir, final String name, final Codec<K> keyCodec, final Codec<V> valueCodec, final boolean sync, final long maxLength) throws IOException {
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.sync = sync;
+        this.maxLength = Math.min(maxLength, MAX_LENGTH);
+
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create database directory: " + dir);
+
+        file = new File(dir, name + ".log");
+        index = Maps.newHashMap();
+
+        this.open();
+        this.replay();
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        length = channel.size();
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    private void replay() throws IOException {
+        int records = 0;
+        long offset = 0;
+
+        while (offset < length) {
+            final int recordLength = this.validateRecord(offset);
+            if (recordLength < 0) {
+                LOG.warn("Truncating corrupt record at offset {} of {} ({} bytes discarded)", offset, file, length - offset);
+
+                channel.truncate(offset);
+                length = offset;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                break;
+            }
+
+            final K key = this.readKey(offset);
+            if (buffer.getInt((int) offset + 8) == TOMBSTONE)
+                index.remove(key);
+            else
+                index.put(key, offset);
+
+            records++;
+            offset += recordLength;
+        }
+
+        LOG.debug("Replayed {} records from {}, {} live entries", records, file, index.size());
+
+        // Rewrite the log if more than half of it is superseded records
+        if (records > 2 * index.size())
+            this.compact();
+    }
+
+    private int validateRecord(long offset) {
+        if (length - offset < HEADER_SIZE)
+            return -1;
+
+        final int position = (int) offset;
+        final int crc = buffer.getInt(position);
+        final int keyLength = buffer.getInt(position + 4);
+        final int valueLength = buffer.getInt(position + 8);
+
+        if (keyLength < 0 || valueLength < TOMBSTONE)
+            return -1;
+
+        final long recordLength = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+        if (length - offset < recordLength)
+            return -1;
+
+        final CRC32 checksum = new CRC32();
+        final ByteBuffer record = buffer.duplicate();
+        record.position(position + 4).limit((int) (offset + recordLength));
+        checksum.update(LocalMap.toArray(record));
+
+        if ((int) checksum.getValue() != crc)
+            return -1;
+
+        return (int) recordLength;
+    }
+
+    private void compact() throws IOException {
+        final File compacted = new File(file.getParentFile(), file.getName() + ".compact");
+
+        try (final RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            out.setLength(0);
+
+            final Map<K, Long> offsets = Maps.newHashMap();
+            for (Map.Entry<K, Long> entry : index.entrySet()) {
+                offsets.put(entry.getKey(), out.getFilePointer());
+                out.write(this.readRecord(entry.getValue()));
+            }
+
+            out.getChannel().force(true);
+
+            index.putAll(offsets);
+        }
+
+        channel.close();
+        raf.close();
+
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Compacted {} to {} live entries", file, index.size());
+
+        this.open();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer slice(long offset, int skip, int length) {
+        if (offset + skip + length > buffer.capacity()) {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, this.length);
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position((int) offset + skip).limit((int) offset + skip + length);
+        return slice;
+    }
+
+    private byte[] readRecord(long offset) {
+        final int keyLength = this.slice(offset, 4, 4).getInt();
+        final int valueLength = this.slice(offset, 8, 4).getInt();
+        return LocalMap.toArray(this.slice(offset, 0, HEADER_SIZE + keyLength + Math.max(valueLength, 0)));
+    }
+
+    private K readKey(long offset) throws IOException {
+        final int keyLength = this.slice(offset, 4, 4).getInt();
+        return keyCodec.decode(LocalMap.toArray(this.slice(offset, HEADER_SIZE, keyLength)));
+    }
+
+    private V readValue(long offset) {
+        try {
+            final int keyLength = this.slice(offset, 4, 4).getInt();
+            final int valueLength = this.slice(offset, 8, 4).getInt();
+            return valueCodec.decode(LocalMap.toArray(this.slice(offset, HEADER_SIZE + keyLength, valueLength)));
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Appends a record for the key, or a removal if value is null.
+     */
+    private long append(K key, V value) {
+        try {
+            final byte[] keyBytes = keyCodec.encode(key);
+            final byte[] valueBytes = value == null ? new byte[0] : valueCodec.encode(value);
+            final int recordLength = HEADER_SIZE + keyBytes.length + valueBytes.length;
+
+            if (length + recordLength > maxLength) {
+                this.compact();
+
+                if (length + recordLength > maxLength)
+                    throw new IOException("No room left in " + file + " for a " + recordLength + " byte record, " + index.size() + " live entries");
+            }
+
+            final ByteBuffer record = ByteBuffer.allocate(recordLength);
+            record.putInt(0);
+            record.putInt(keyBytes.length);
+            record.putInt(value == null ? TOMBSTONE : valueBytes.length);
+            record.put(keyBytes);
+            record.put(valueBytes);
+
+            final CRC32 checksum = new CRC32();
+            checksum.update(record.array(), 4, record.capacity() - 4);
+            record.putInt(0, (int) checksum.getValue());
+            record.flip();
+
+            final long offset = length;
+            while (record.hasRemaining())
+                channel.write(record, length + record.position());
+
+            if (sync)
+                channel.force(false);
+
+            length += record.capacity();
+
+            return offset;
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public synchronized boolean containsValue(Object value) {
+        return this.values().contains(value);
+    }
+
+    @Override
+    public synchronized V get(Object key) {
+        final Long offset = index.get(key);
+        return offset == null ? null : this.readValue(offset);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(value);
+
+        final V previous = this.get(key);
+        index.put(key, this.append(key, value));
+        return previous;
+    }
+
+    @Override
+    public synchronized V putIfAbsent(K key, V value) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(value);
+
+        final V current = this.get(key);
+        if (current == null)
+            index.put(key, this.append(key, value));
+
+        return current;
+    }
+
+    @Override
+    public synchronized boolean replace(K key, V oldValue, V newValue) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(newValue);
+
+        if (!Objects.equal(this.get(key), oldValue))
+            return false;
+
+        index.put(key, this.append(key, newValue));
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(Object key) {
+        final V previous = this.get(key);
+        if (previous != null) {
+            // Only keys present in the index have a value, so the key must be a K
+            this.append((K) key, null);
+            index.remove(key);
+        }
+
+        return previous;
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            Preconditions.checkNotNull(entry.getKey());
+            Preconditions.checkNotNull(entry.getValue());
+
+            index.put(entry.getKey(), this.append(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            channel.truncate(0);
+            length = 0;
+            index.clear();
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public synchronized Set<K> keySet() {
+        return ImmutableSet.copyOf(index.keySet());
+    }
+
+    @Override
+    public synchronized Collection<V> values() {
+        final ImmutableList.Builder<V> values = ImmutableList.builder();
+        for (Long offset : index.values()) {
+            values.add(this.readValue(offset));
+        }
+
+        return values.build();
+    }
+
+    @Override
+    public synchronized Set<Entry<K, V>> entrySet() {
+        final ImmutableSet.Builder<Entry<K, V>> entries = ImmutableSet.builder();
+        for (Map.Entry<K, Long> entry : index.entrySet()) {
+            entries.add(Maps.immutableEntry(entry.getKey(), this.readValue(entry.getValue())));
+        }
+
+        return entries.build();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(true);
+        channel.close();
+        raf.close();
+    }
+}
@@ -0,0 +1,44 @@
+package com.jamierf.mediamanager.db.local;
+
+import com.google.common.base.Optional;
+import com.jamierf.mediamanager.db.QualityDatabase;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.codec.JsonCodec;
+import com.jamierf.mediamanager.models.codec.NameCodec;
+import com.jamierf.mediamanager.util.TimestampToDateTimeFunction;
+import org.joda.time.DateTime;
+
+import java.io.File;
+import java.io.IOException;
+
+public class LocalQualityDatabase implements QualityDatabase {
+
+    private static final String TABLE_NAME = "seen";
+
+    private final LocalMap<Name, Long> shows;
+
+    public LocalQualityDatabase(final File dir, final boolean sync) throws IOException {
+        shows = new LocalMap<>(dir, TABLE_NAME, NameCodec.INSTANCE, new JsonCodec<>(Long.class), sync);
+    }
+
+    @Override
+    public DateTime recordAndGetFirstSeen(final Name name, final DateTime now) {
+        final Long firstSeen = shows.putIfAbsent(name, now.getMillis());
+        return firstSeen == null ? now : new DateTime(firstSeen);
+    }
+
+    @Override
+    public Optional<DateTime> get(final Name name) {
+        return Optional.fromNullable(shows.get(name)).transform(TimestampToDateTimeFunction.INSTANCE);
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() throws IOException {
+        shows.close();
+    }
+}
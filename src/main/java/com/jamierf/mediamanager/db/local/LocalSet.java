@@ -0,0 +1,116 @@
+package com.jamierf.mediamanager.db.local;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+public class LocalSet<K> implements Set<K>, Closeable {
+
+    private static final Boolean VALUE = Boolean.TRUE;
+
+    private final LocalMap<K, Boolean> map;
+
+    public LocalSet(final File dir, final String name, final Class<K> keyClass, final boolean sync) throws IOException {
+        map = new LocalMap<K, Boolean>(dir, name, keyClass, Boolean.class, sync);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+
+    @Override
+    public Iterator<K> iterator() {
+        return map.keySet().iterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return map.keySet().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return map.keySet().toArray(a);
+    }
+
+    @Override
+    public boolean add(K k) {
+        return map.put(k, VALUE) == null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return map.remove(o) != null;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object key : c) {
+            if (!this.contains(key)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends K> c) {
+        boolean result = false;
+
+        for (K key : c) {
+            result |= this.add(key);
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean result = false;
+
+        for (K key : map.keySet()) {
+            if (!c.contains(key)) {
+                map.remove(key);
+                result = true;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean result = false;
+
+        for (Object key : c) {
+            result |= this.remove(key);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        map.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.jamierf.mediamanager.db.local;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Collections2;
+import com.jamierf.mediamanager.db.ShowDatabase;
+import com.jamierf.mediamanager.models.Episode;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.State;
+import com.jamierf.mediamanager.models.codec.EpisodeCodec;
+import com.jamierf.mediamanager.models.codec.NameCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+public class LocalShowDatabase implements ShowDatabase {
+
+    private static final String TABLE_NAME = "show";
+
+    private final LocalMap<Name, Episode> episodes;
+
+    public LocalShowDatabase(final File dir, final boolean sync) throws IOException {
+        episodes = new LocalMap<>(dir, TABLE_NAME, NameCodec.INSTANCE, EpisodeCodec.INSTANCE, sync);
+    }
+
+    @Override
+    public boolean addOrUpdate(Episode episode) throws IOException {
+        final Name key = episode.getName();
+
+        episodes.put(key, episode);
+        return true;
+    }
+
+    @Override
+    public boolean addIfNotExists(Episode episode) throws IOException {
+        final Name key = episode.getName();
+
+        return episodes.putIfAbsent(key, episode) == null;
+    }
+
+    @Override
+    public boolean transition(Name name, State from, State to) throws IOException {
+        return episodes.replace(name, new Episode(name, from), new Episode(name, to));
+    }
+
+    @Override
+    public Optional<Episode> get(Name name) throws IOException {
+        return Optional.fromNullable(episodes.get(name));
+    }
+
+    @Override
+    public Collection<Episode> getAllEpisodes() throws IOException {
+        return episodes.values();
+    }
+
+    @Override
+    public Collection<Episode> getDesiredEpisodes() throws IOException {
+        return Collections2.filter(this.getAllEpisodes(), new Predicate<Episode>() {
+            @Override
+            public boolean apply(Episode episode) {
+                return episode.isDesired();
+            }
+        });
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() throws IOException {
+        episodes.close();
+    }
+}
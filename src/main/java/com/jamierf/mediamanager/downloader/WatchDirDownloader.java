@@ -52,7 +52,7 @@ public class WatchDirDownloader implements Downloader {
     }
 
     private InputStream openStream(final URI link) {
-        return retryManager.apply(new Callable<InputStream>() {
+        return retryManager.apply(link.getHost(), new Callable<InputStream>() {
             @Override
             public InputStream call() throws Exception {
                 return client.resource(link).get(InputStream.class);
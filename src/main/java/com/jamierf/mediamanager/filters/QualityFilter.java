@@ -1,6 +1,5 @@
 package com.jamierf.mediamanager.filters;
 
-import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.jamierf.mediamanager.db.QualityDatabase;
 import com.jamierf.mediamanager.models.NameAndQuality;
@@ -36,9 +35,8 @@ public class QualityFilter implements Predicate<NameAndQuality> {
 
         final DateTime now = DateTime.now();
 
-        db.update(input.getName(), now);
-        final Optional<DateTime> firstSeen = db.get(input.getName());
-        final boolean trySecondary = firstSeen.isPresent() && firstSeen.get().isBefore(now.minus(primaryTimeout.toMilliseconds()));
+        final DateTime firstSeen = db.recordAndGetFirstSeen(input.getName(), now);
+        final boolean trySecondary = firstSeen.isBefore(now.minus(primaryTimeout.toMilliseconds()));
 
         if (primary.contains(input.getQuality())) {
             LOG.trace("Accepting {}, {} is a primary quality", input.getName(), input.getQuality());
@@ -0,0 +1,25 @@
+package com.jamierf.mediamanager.healthchecks;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Joiner;
+import com.jamierf.mediamanager.io.retry.CircuitBreakerRetryManager;
+
+import java.util.Collection;
+
+public class CircuitBreakerHealthcheck extends HealthCheck {
+
+    private final CircuitBreakerRetryManager retryManager;
+
+    public CircuitBreakerHealthcheck(CircuitBreakerRetryManager retryManager) {
+        this.retryManager = retryManager;
+    }
+
+    @Override
+    protected Result check() throws Exception {
+        final Collection<String> hosts = retryManager.getOpenHosts();
+        if (hosts.isEmpty())
+            return Result.healthy();
+
+        return Result.unhealthy(String.format("Circuit open for: %s", Joiner.on(", ").join(hosts)));
+    }
+}
@@ -0,0 +1,145 @@
+package com.jamierf.mediamanager.io;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Maps;
+import com.jamierf.mediamanager.config.RateLimitConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of requests to each host, whichever client they are made from. Rather than blocking
+ * until a permit is free, callers reserve one and are told how long to wait for it, so a request queued
+ * behind the limit can wait on a timer instead of holding a thread. Permits are handed out in the order
+ * they were reserved. Hosts are limited to the default rate unless configured otherwise, and a rate of
+ * zero or less leaves a host unlimited. Time spent waiting for a permit is reported per host.
+ */
+public class HostRateLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HostRateLimiter.class);
+
+    private static class Limiter {
+
+        private final long intervalNS;
+        private long nextFreeNS;
+
+        private Limiter(double rate) {
+            intervalNS = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            nextFreeNS = System.nanoTime();
+        }
+
+        public synchronized long reserve() {
+            final long nowNS = System.nanoTime();
+            final long waitNS = Math.max(0, nextFreeNS - nowNS);
+
+            nextFreeNS = Math.max(nextFreeNS, nowNS) + intervalNS;
+            return waitNS;
+        }
+
+        public synchronized boolean tryReserve() {
+            final long nowNS = System.nanoTime();
+            if (nextFreeNS > nowNS)
+                return false;
+
+            nextFreeNS = nowNS + intervalNS;
+            return true;
+        }
+
+        public synchronized void release() {
+            // Permits reserved since keep their times, the next one reserved takes the place of this one
+            nextFreeNS = Math.max(System.nanoTime(), nextFreeNS - intervalNS);
+        }
+    }
+
+    private final MetricRegistry metrics;
+    private final double defaultRate;
+    private final Map<String, Double> rates;
+    private final Map<String, Limiter> limiters;
+
+    public HostRateLimiter(MetricRegistry metrics, RateLimitConfiguration config) {
+        this.metrics = metrics;
+
+        defaultRate = config.getDefaultRate();
+        rates = Maps.newHashMap();
+        for (Map.Entry<String, Double> entry : config.getHosts().entrySet())
+            rates.put(entry.getKey().toLowerCase(), entry.getValue());
+
+        limiters = Maps.newHashMap();
+    }
+
+    private static String getKey(String host) {
+        return host == null ? "" : host.toLowerCase();
+    }
+
+    /**
+     * @return the limiter for the given host, or null if it is unlimited
+     */
+    private Limiter getLimiter(String host) {
+        synchronized (limiters) {
+            if (limiters.containsKey(host))
+                return limiters.get(host);
+
+            final Double configured = rates.get(host);
+            final double rate = configured == null ? defaultRate : configured;
+
+            final Limiter limiter = rate > 0 ? new Limiter(rate) : null;
+            limiters.put(host, limiter);
+
+            if (LOG.isDebugEnabled()) {
+                if (limiter == null)
+                    LOG.debug("Not limiting requests to {}", host);
+                else
+                    LOG.debug("Limiting requests to {} to {}/s", host, rate);
+            }
+
+            return limiter;
+        }
+    }
+
+    /**
+     * Reserves the next permit for the given host.
+     *
+     * @return how many milliseconds to wait before making the request
+     */
+    public long reserve(String host) {
+        final String key = HostRateLimiter.getKey(host);
+        final Limiter limiter = this.getLimiter(key);
+        if (limiter == null)
+            return 0;
+
+        final long waitNS = limiter.reserve();
+
+        metrics.timer(MetricRegistry.name(HostRateLimiter.class, key, "wait")).update(waitNS, TimeUnit.NANOSECONDS);
+        return TimeUnit.NANOSECONDS.toMillis(waitNS);
+    }
+
+    /**
+     * Reserves a permit for the given host only if one is free straight away.
+     *
+     * @return false if a request can't be made to the host without waiting
+     */
+    public boolean tryReserve(String host) {
+        final String key = HostRateLimiter.getKey(host);
+        final Limiter limiter = this.getLimiter(key);
+        if (limiter == null)
+            return true;
+
+        if (!limiter.tryReserve())
+            return false;
+
+        metrics.timer(MetricRegistry.name(HostRateLimiter.class, key, "wait")).update(0, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /**
+     * Gives back a permit reserved with {@link #reserve} which will no longer be used, because the request
+     * was cancelled before its turn came.
+     */
+    public void release(String host) {
+        final Limiter limiter = this.getLimiter(HostRateLimiter.getKey(host));
+        if (limiter != null)
+            limiter.release();
+    }
+}
@@ -0,0 +1,49 @@
+package com.jamierf.mediamanager.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The body of a response as a stream, along with the validators needed to make a conditional request for
+ * it later. The stream must be closed once read, to release the connection.
+ */
+public class HttpContent implements Closeable {
+
+    private final InputStream stream;
+    private final Charset charset;
+    private final String etag;
+    private final String lastModified;
+
+    public HttpContent(InputStream stream, Charset charset, String etag, String lastModified) {
+        this.stream = stream;
+        this.charset = charset;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public InputStream getStream() {
+        return stream;
+    }
+
+    /**
+     * @return the charset given by the response, or null if it didn't give one
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
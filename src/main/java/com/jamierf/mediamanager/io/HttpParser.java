@@ -1,15 +1,24 @@
 package com.jamierf.mediamanager.io;
 
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.jamierf.mediamanager.config.ParserConfiguration;
 import com.jamierf.mediamanager.io.retry.RetryManager;
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
-import org.reflections.Reflections;
+import io.dropwizard.util.Size;
+import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
@@ -17,41 +26,39 @@ public abstract class HttpParser<T extends ParsedItem> {
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpParser.class);
 
-    public static <T extends HttpParser<? extends ParsedItem>> T getInstance(Class<T> base, String name, Client client, RetryManager retryManager, ParserConfiguration config) throws ClassNotFoundException {
-        // Lowercase the requested name
-        name = name.toLowerCase();
+    public static final Size DEFAULT_MAX_RESPONSE_SIZE = Size.megabytes(16);
+
+    private static final String CHARSET_PARAMETER = "charset";
 
+    public static <T extends HttpParser<? extends ParsedItem>> T getInstance(Class<T> base, String name, Client client, RetryManager retryManager, ParserConfiguration config) throws ClassNotFoundException {
         // Ensure we always pass a configuration map
         if (config == null)
             config = new ParserConfiguration();
 
-        final Set<Class<? extends T>> classes = new Reflections(base).getSubTypesOf(base);
-        for (Class<? extends T> clazz : classes) {
-            String parserName = clazz.getSimpleName();
-            if (parserName.endsWith("Parser"))
-                parserName = parserName.substring(0, parserName.length() - 6);
+        final Class<? extends T> clazz = ParserRegistry.lookup(base, name);
+        if (clazz == null)
+            return null;
 
-            // If this isn't the parser we are looking for
-            if (!name.equals(parserName.toLowerCase()))
-                continue;
+        final String parserName = clazz.getSimpleName();
+        try {
+            final Constructor<? extends T> constructor = clazz.getDeclaredConstructor(Client.class, RetryManager.class, ParserConfiguration.class);
 
-            try {
-                final Constructor constructor = clazz.getDeclaredConstructor(Client.class, RetryManager.class, ParserConfiguration.class);
+            if (LOG.isInfoEnabled())
+                LOG.info("Creating new parser for {}", parserName);
 
-                if (LOG.isInfoEnabled())
-                    LOG.info("Creating new parser for {}", parserName);
+            final T parser = constructor.newInstance(client, retryManager, config);
+            parser.setMaxResponseSize(config.getSize("maxResponseSize", DEFAULT_MAX_RESPONSE_SIZE));
 
-                return base.cast(constructor.newInstance(client, retryManager, config));
-            }
-            catch (NoSuchMethodException e) {
-                LOG.error("Failed to load constructor of " + parserName + " parser", e);
-            }
-            catch (IllegalAccessException e) {
-                LOG.error("Failed to access non-public constructor of " + parserName + " parser", e);
-            }
-            catch (Exception e) {
-                LOG.error("Unknown error invoking constructor of " + parserName + " parser", e);
-            }
+            return parser;
+        }
+        catch (NoSuchMethodException e) {
+            LOG.error("Failed to load constructor of " + parserName, e);
+        }
+        catch (IllegalAccessException e) {
+            LOG.error("Failed to access non-public constructor of " + parserName, e);
+        }
+        catch (Exception e) {
+            LOG.error("Unknown error invoking constructor of " + parserName, e);
         }
 
         return null;
@@ -62,6 +69,8 @@ public abstract class HttpParser<T extends ParsedItem> {
     private final URI url;
     private final String method;
 
+    private volatile Size maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+
     public HttpParser(Client client, RetryManager retryManager, String url, String method) {
         this (client, retryManager, URI.create(url), method);
     }
@@ -77,18 +86,91 @@ public abstract class HttpParser<T extends ParsedItem> {
         return client.resource(url);
     }
 
-    protected String fetchContent(final WebResource.Builder resource) {
-        return retryManager.apply(new Callable<String>() {
+    private HttpContent toContent(ClientResponse response) {
+        // Mirror what fetching the entity directly would do, so failures are still retried
+        if (response.getStatus() >= HttpStatus.SC_MULTIPLE_CHOICES)
+            throw new UniformInterfaceException(response);
+
+        final MediaType type = response.getType();
+        final String charset = type == null ? null : type.getParameters().get(CHARSET_PARAMETER);
+
+        return new HttpContent(
+                new SizeLimitedInputStream(response.getEntityInputStream(), maxResponseSize.toBytes()),
+                charset == null || !Charset.isSupported(charset) ? null : Charset.forName(charset),
+                response.getHeaders().getFirst(HttpHeaders.ETAG),
+                response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+
+    private Callable<HttpContent> newFetch(final WebResource.Builder resource) {
+        return new Callable<HttpContent>() {
             @Override
-            public String call() throws Exception {
-                return resource.method(method, String.class);
+            public HttpContent call() throws Exception {
+                return toContent(resource.method(method, ClientResponse.class));
             }
-        });
+        };
+    }
+
+    private Callable<Optional<HttpContent>> newConditionalFetch(final WebResource.Builder resource, String etag, String lastModified) {
+        if (etag != null)
+            resource.header(HttpHeaders.IF_NONE_MATCH, etag);
+
+        if (lastModified != null)
+            resource.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+
+        return new Callable<Optional<HttpContent>>() {
+            @Override
+            public Optional<HttpContent> call() throws Exception {
+                final ClientResponse response = resource.method(method, ClientResponse.class);
+                if (response.getStatus() == HttpStatus.SC_NOT_MODIFIED) {
+                    response.close();
+                    return Optional.absent();
+                }
+
+                return Optional.of(toContent(response));
+            }
+        };
+    }
+
+    protected HttpContent fetchContent(final WebResource.Builder resource) {
+        return retryManager.apply(url.getHost(), this.newFetch(resource));
+    }
+
+    /**
+     * As {@link #fetchContent}, but without blocking while retries back off.
+     */
+    protected ListenableFuture<HttpContent> fetchContentAsync(final WebResource.Builder resource) {
+        return retryManager.applyAsync(url.getHost(), this.newFetch(resource));
+    }
+
+    /**
+     * Fetches the content only if it has changed since the response the given validators came from.
+     *
+     * @return the new content, or absent if it has not been modified
+     */
+    protected Optional<HttpContent> fetchContentIfModified(final WebResource.Builder resource, String etag, String lastModified) {
+        return retryManager.apply(url.getHost(), this.newConditionalFetch(resource, etag, lastModified));
+    }
+
+    /**
+     * As {@link #fetchContentIfModified}, but without blocking while retries back off.
+     */
+    protected ListenableFuture<Optional<HttpContent>> fetchContentIfModifiedAsync(final WebResource.Builder resource, String etag, String lastModified) {
+        return retryManager.applyAsync(url.getHost(), this.newConditionalFetch(resource, etag, lastModified));
+    }
+
+    /**
+     * Responses larger than this fail rather than being read in full.
+     */
+    public void setMaxResponseSize(Size maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
     }
 
     public URI getUrl() {
         return url;
     }
 
-    protected abstract Set<T> parse(String content) throws Exception;
+    /**
+     * @param charset the charset given by the response, or null if the parser should work it out itself
+     */
+    protected abstract Set<T> parse(InputStream content, Charset charset) throws Exception;
 }
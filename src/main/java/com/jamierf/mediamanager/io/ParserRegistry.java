@@ -0,0 +1,69 @@
+package com.jamierf.mediamanager.io;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMultimap;
+import com.jamierf.mediamanager.parsing.ical.parsers.PogDesignsParser;
+import com.jamierf.mediamanager.parsing.rss.parsers.BitMeParser;
+import com.jamierf.mediamanager.parsing.rss.parsers.BitMeTVParser;
+import com.jamierf.mediamanager.parsing.rss.parsers.TCParser;
+import com.jamierf.mediamanager.parsing.rss.parsers.WhatCDParser;
+
+import java.util.List;
+
+/**
+ * Every parser which can be named in the configuration. A parser is known by its class name, lowercased
+ * and without the Parser suffix, i.e. PogDesignsParser is "pogdesigns". Names need only be unique among
+ * parsers of the same kind, as there are both feed and search parsers for some sites.
+ */
+public final class ParserRegistry {
+
+    private static final List<Class<? extends HttpParser<? extends ParsedItem>>> PARSERS = ImmutableList.<Class<? extends HttpParser<? extends ParsedItem>>>of(
+            // Torrent feeds
+            BitMeParser.class,
+            BitMeTVParser.class,
+            com.jamierf.mediamanager.parsing.rss.parsers.HDBitsParser.class,
+            com.jamierf.mediamanager.parsing.rss.parsers.SCCParser.class,
+            TCParser.class,
+            WhatCDParser.class,
+
+            // Torrent searches
+            com.jamierf.mediamanager.parsing.search.parsers.HDBitsParser.class,
+            com.jamierf.mediamanager.parsing.search.parsers.SCCParser.class,
+
+            // Calendars
+            PogDesignsParser.class
+    );
+
+    private static final ImmutableMultimap<String, Class<? extends HttpParser<? extends ParsedItem>>> PARSERS_BY_NAME = ParserRegistry.indexByName(PARSERS);
+
+    private static ImmutableMultimap<String, Class<? extends HttpParser<? extends ParsedItem>>> indexByName(List<Class<? extends HttpParser<? extends ParsedItem>>> parsers) {
+        final ImmutableListMultimap.Builder<String, Class<? extends HttpParser<? extends ParsedItem>>> index = ImmutableListMultimap.builder();
+        for (Class<? extends HttpParser<? extends ParsedItem>> parser : parsers)
+            index.put(ParserRegistry.getName(parser), parser);
+
+        return index.build();
+    }
+
+    public static String getName(Class<?> parser) {
+        String name = parser.getSimpleName();
+        if (name.endsWith("Parser"))
+            name = name.substring(0, name.length() - 6);
+
+        return name.toLowerCase();
+    }
+
+    /**
+     * @return the parser of the given kind with the given name, or null if there isn't one
+     */
+    public static <T extends HttpParser<? extends ParsedItem>> Class<? extends T> lookup(Class<T> base, String name) {
+        for (Class<? extends HttpParser<? extends ParsedItem>> parser : PARSERS_BY_NAME.get(name.toLowerCase())) {
+            if (base.isAssignableFrom(parser))
+                return parser.asSubclass(base);
+        }
+
+        return null;
+    }
+
+    private ParserRegistry() {}
+}
@@ -0,0 +1,58 @@
+package com.jamierf.mediamanager.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with an {@link IOException} once more than the given number of bytes have been read, rather than
+ * silently truncating the stream.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long read;
+
+    public SizeLimitedInputStream(InputStream in, long limit) {
+        super(in);
+
+        this.limit = limit;
+    }
+
+    private void count(long bytes) throws IOException {
+        if (bytes <= 0)
+            return;
+
+        read += bytes;
+        if (read > limit)
+            throw new IOException("Response exceeds maximum size of " + limit + " bytes");
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0)
+            this.count(1);
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int bytes = super.read(b, off, len);
+        this.count(bytes);
+        return bytes;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long bytes = super.skip(n);
+        this.count(bytes);
+        return bytes;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
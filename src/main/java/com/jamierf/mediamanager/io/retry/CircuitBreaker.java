@@ -0,0 +1,71 @@
+package com.jamierf.mediamanager.io.retry;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Tracks consecutive failures of a single host. Once the threshold is reached the circuit opens and
+ * requests are refused until the open duration has passed, after which a single probe request is let
+ * through. The circuit closes again if the probe succeeds, or stays open for another period if not.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMS;
+
+    private State state;
+    private int failures;
+    private long openedAtMS;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMS = openDuration.toMilliseconds();
+
+        state = State.CLOSED;
+    }
+
+    /**
+     * If this returns true then the result of the request must be reported with
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAtMS < openDurationMS)
+                    return false;
+
+                // Let this one through as a probe, refusing everything else until we hear back
+                state = State.HALF_OPEN;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * @return true if this failure opened the circuit
+     */
+    public synchronized boolean onFailure() {
+        failures++;
+        if (state == State.OPEN || (state == State.CLOSED && failures < failureThreshold))
+            return false;
+
+        state = State.OPEN;
+        openedAtMS = System.currentTimeMillis();
+        return true;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,143 @@
+package com.jamierf.mediamanager.io.retry;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.jamierf.mediamanager.config.RetryConfiguration;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import io.dropwizard.util.Duration;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Keeps a {@link CircuitBreaker} per host, so requests to a host which keeps failing are refused with a
+ * {@link CircuitOpenException} rather than each being retried until they time out. Only connection
+ * failures and server errors count against a host. A request whose failure opens the circuit is not
+ * retried any further.
+ */
+public class CircuitBreakerRetryManager extends DelayedJerseyRetryManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreakerRetryManager.class);
+
+    private final MetricRegistry metrics;
+    private final Class<?> klass;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Map<String, CircuitBreaker> breakers;
+    private final Meter rejected;
+
+    public CircuitBreakerRetryManager(final MetricRegistry metrics, final Class<?> klass, final RetryConfiguration config) {
+        super (metrics, klass, config);
+
+        this.metrics = metrics;
+        this.klass = klass;
+        this.failureThreshold = config.getFailureThreshold();
+        this.openDuration = config.getOpenDuration();
+
+        breakers = Maps.newHashMap();
+        rejected = metrics.meter(MetricRegistry.name(klass, "-circuits", "rejected"));
+
+        metrics.register(MetricRegistry.name(klass, "-circuits", "open"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getOpenHosts().size();
+            }
+        });
+    }
+
+    private CircuitBreaker getBreaker(final String host) {
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(host);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(failureThreshold, openDuration);
+                breakers.put(host, breaker);
+
+                final CircuitBreaker hostBreaker = breaker;
+                metrics.register(MetricRegistry.name(klass, "-circuits", host, "state"), new Gauge<String>() {
+                    @Override
+                    public String getValue() {
+                        return hostBreaker.getState().name();
+                    }
+                });
+            }
+
+            return breaker;
+        }
+    }
+
+    protected boolean isHostFailure(Exception e) {
+        if (e instanceof ClientHandlerException)
+            return true;
+
+        if (e instanceof UniformInterfaceException)
+            return ((UniformInterfaceException) e).getResponse().getStatus() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+
+        return false;
+    }
+
+    @Override
+    protected <T> Callable<T> decorate(final String host, final Callable<T> callable) {
+        if (host == null)
+            return super.decorate(host, callable);
+
+        final String key = host.toLowerCase();
+        final CircuitBreaker breaker = this.getBreaker(key);
+
+        return super.decorate(host, new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                if (!breaker.allowRequest()) {
+                    rejected.mark();
+                    throw new CircuitOpenException(key);
+                }
+
+                try {
+                    final T result = callable.call();
+                    breaker.onSuccess();
+                    return result;
+                }
+                catch (Exception e) {
+                    if (!isHostFailure(e)) {
+                        // The host answered, so it's up even if the request was bad
+                        breaker.onSuccess();
+                        throw e;
+                    }
+
+                    if (!breaker.onFailure())
+                        throw e;
+
+                    LOG.warn("Opening circuit for {} for {} after repeated failures", key, openDuration);
+                    throw new CircuitOpenException(key, e);
+                }
+                catch (Error e) {
+                    // Every request must be reported, or a half open circuit would never close again
+                    if (breaker.onFailure())
+                        LOG.warn("Opening circuit for {} for {} after repeated failures", key, openDuration);
+
+                    throw e;
+                }
+            }
+        });
+    }
+
+    public Collection<String> getOpenHosts() {
+        final ImmutableSet.Builder<String> hosts = ImmutableSet.builder();
+
+        synchronized (breakers) {
+            for (Map.Entry<String, CircuitBreaker> entry : breakers.entrySet()) {
+                if (entry.getValue().getState() != CircuitBreaker.State.CLOSED)
+                    hosts.add(entry.getKey());
+            }
+        }
+
+        return hosts.build();
+    }
+}
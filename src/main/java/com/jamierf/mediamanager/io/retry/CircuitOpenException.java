@@ -0,0 +1,23 @@
+package com.jamierf.mediamanager.io.retry;
+
+/**
+ * Thrown instead of making a request to a host whose circuit is open.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private final String host;
+
+    public CircuitOpenException(String host) {
+        this(host, null);
+    }
+
+    public CircuitOpenException(String host, Throwable cause) {
+        super("Circuit open for " + host, cause);
+
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+}
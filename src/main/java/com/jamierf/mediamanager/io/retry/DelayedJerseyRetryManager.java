@@ -15,13 +15,20 @@ public class DelayedJerseyRetryManager extends JerseyRetryManager {
     public DelayedJerseyRetryManager(final MetricRegistry metrics, final Class<?> klass, final RetryConfiguration config) {
         this (metrics, klass, config.getMaxRetries(),
                 config.getMaxDuration(), config.getRetriableStatusCodes(),
-                config.getWait(), config.isExponentialBackoff(), config.isRandomiseWait());
+                config.getWait(), config.isExponentialBackoff(), config.isRandomiseWait(), config.getThreads());
     }
 
     public DelayedJerseyRetryManager(final MetricRegistry metrics, final Class<?> klass, final int maxRetries,
                                      final Duration maxDuration, final Set<Integer> retriableStatusCodes,
                                      final Duration wait, final boolean exponential, final boolean randomize) {
-        super (metrics, klass, maxRetries, maxDuration, retriableStatusCodes);
+        this (metrics, klass, maxRetries, maxDuration, retriableStatusCodes, wait, exponential, randomize, DEFAULT_THREADS);
+    }
+
+    public DelayedJerseyRetryManager(final MetricRegistry metrics, final Class<?> klass, final int maxRetries,
+                                     final Duration maxDuration, final Set<Integer> retriableStatusCodes,
+                                     final Duration wait, final boolean exponential, final boolean randomize,
+                                     final int threads) {
+        super (metrics, klass, maxRetries, maxDuration, retriableStatusCodes, threads);
 
         this.wait = wait;
         this.exponential = exponential;
@@ -29,24 +36,15 @@ public class DelayedJerseyRetryManager extends JerseyRetryManager {
     }
 
     @Override
-    protected boolean retryFailure(final Exception exception, final int attempts, final long startTimeMS) {
-        if (super.retryFailure(exception, attempts, startTimeMS)) {
-            long naptime = wait.toMilliseconds();
-
-            if (exponential)
-                naptime *= (1 << attempts);
-
-            if (randomize != null)
-                naptime = (naptime * (1 + randomize.nextInt(1000)))/1000;
-
-            try {
-                Thread.sleep(naptime);
-            } catch (InterruptedException e) {
-                return false;
-            }
-            return true;
-        } else {
-            return false;
-        }
+    protected long getRetryDelay(final int attempts) {
+        long naptime = wait.toMilliseconds();
+
+        if (exponential)
+            naptime *= (1 << attempts);
+
+        if (randomize != null)
+            naptime = (naptime * (1 + randomize.nextInt(1000)))/1000;
+
+        return naptime;
     }
 }
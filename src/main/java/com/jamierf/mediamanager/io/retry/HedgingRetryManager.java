@@ -0,0 +1,115 @@
+package com.jamierf.mediamanager.io.retry;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jamierf.mediamanager.config.RetryConfiguration;
+import com.jamierf.mediamanager.io.HostRateLimiter;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Sends a second copy of a request which has taken longer than the given percentile of recent successful
+ * requests to the same host, so one slow response doesn't hold up the caller until it times out. Hosts
+ * without enough recent history aren't hedged. Latency is measured from when the request was given its
+ * rate limit permit, so time spent queued behind our own limit never looks like a slow host.
+ *
+ * Retries and hedged copies both come out of a {@link RetryBudget} per host, so neither can amplify an
+ * outage.
+ */
+public class HedgingRetryManager extends RateLimitedRetryManager {
+
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY_MS = 100;
+
+    private final MetricRegistry metrics;
+    private final Class<?> klass;
+    private final boolean hedge;
+    private final double hedgePercentile;
+    private final double budgetRatio;
+    private final int budgetReserve;
+    private final Map<String, RetryBudget> budgets;
+    private final Meter exhausted;
+
+    public HedgingRetryManager(final MetricRegistry metrics, final Class<?> klass, final RetryConfiguration config, final HostRateLimiter rateLimiter) {
+        super (metrics, klass, config, rateLimiter);
+
+        this.metrics = metrics;
+        this.klass = klass;
+        this.hedge = config.isHedge();
+        this.hedgePercentile = config.getHedgePercentile();
+        this.budgetRatio = config.getRetryBudgetRatio();
+        this.budgetReserve = config.getRetryBudgetReserve();
+
+        budgets = Maps.newHashMap();
+        exhausted = metrics.meter(MetricRegistry.name(klass, "-retries", "budget-exhausted"));
+    }
+
+    private RetryBudget getBudget(String host) {
+        synchronized (budgets) {
+            RetryBudget budget = budgets.get(host);
+            if (budget == null) {
+                budget = new RetryBudget(budgetRatio, budgetReserve);
+                budgets.put(host, budget);
+            }
+
+            return budget;
+        }
+    }
+
+    private Histogram getLatency(String host) {
+        return metrics.histogram(MetricRegistry.name(klass, "-latency", host));
+    }
+
+    @Override
+    public <T> ListenableFuture<T> applyAsync(final String host, final Callable<T> callable) {
+        if (host != null)
+            this.getBudget(host.toLowerCase()).deposit();
+
+        return super.applyAsync(host, callable);
+    }
+
+    @Override
+    protected <T> Callable<T> decorate(final String host, final Callable<T> callable) {
+        if (host == null)
+            return super.decorate(host, callable);
+
+        final Histogram latency = this.getLatency(host.toLowerCase());
+        return super.decorate(host, new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                final long startTimeMS = System.currentTimeMillis();
+                final T result = callable.call();
+
+                // Only successful requests, failures are often much faster or slower
+                latency.update(System.currentTimeMillis() - startTimeMS);
+                return result;
+            }
+        });
+    }
+
+    @Override
+    protected long getHedgeDelay(final String host) {
+        if (!hedge || host == null)
+            return -1;
+
+        final Snapshot snapshot = this.getLatency(host.toLowerCase()).getSnapshot();
+        if (snapshot.size() < MIN_HEDGE_SAMPLES)
+            return -1;
+
+        return Math.max(MIN_HEDGE_DELAY_MS, (long) snapshot.getValue(hedgePercentile));
+    }
+
+    @Override
+    protected boolean acquireRetry(final String host) {
+        if (host == null || this.getBudget(host.toLowerCase()).tryWithdraw())
+            return true;
+
+        exhausted.mark();
+        return false;
+    }
+}
@@ -3,6 +3,8 @@ package com.jamierf.mediamanager.io.retry;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -12,26 +14,40 @@ public abstract class InstrumentedRetryManager extends RetryManager {
     protected final Meter retryMeter;
 
     public InstrumentedRetryManager(final MetricRegistry metrics, final Class<?> klass) {
+        this (metrics, klass, DEFAULT_THREADS);
+    }
+
+    public InstrumentedRetryManager(final MetricRegistry metrics, final Class<?> klass, final int threads) {
+        super (threads);
+
         callTimer = metrics.timer(MetricRegistry.name(klass, "-calls"));
         retryMeter = metrics.meter(MetricRegistry.name(klass, "-retries", "attempts"));
     }
 
     @Override
-    public <T> T apply(final Callable<T> callable) {
+    protected <T> Callable<T> decorate(final String host, final Callable<T> callable) {
         final AtomicBoolean isRetry = new AtomicBoolean(false);
-        final Timer.Context context = callTimer.time();
-        try {
-            return super.apply(new Callable<T>() {
-                @Override
-                public T call() throws Exception {
-                    if (isRetry.getAndSet(true)) {
-                        retryMeter.mark();
-                    }
-                    return callable.call();
+        return super.decorate(host, new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                if (isRetry.getAndSet(true)) {
+                    retryMeter.mark();
                 }
-            });
-        } finally {
-            context.stop();
-        }
+                return callable.call();
+            }
+        });
+    }
+
+    @Override
+    public <T> ListenableFuture<T> applyAsync(final String host, final Callable<T> callable) {
+        final Timer.Context context = callTimer.time();
+        final ListenableFuture<T> future = super.applyAsync(host, callable);
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                context.stop();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return future;
     }
 }
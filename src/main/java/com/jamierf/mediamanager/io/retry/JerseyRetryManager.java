@@ -26,7 +26,12 @@ public class JerseyRetryManager extends InstrumentedRetryManager {
 
     public JerseyRetryManager(final MetricRegistry metrics, final Class<?> klass, final int maxRetries, final Duration maxDuration,
                               final Set<Integer> retriableStatusCodes) {
-        super (metrics, klass);
+        this (metrics, klass, maxRetries, maxDuration, retriableStatusCodes, DEFAULT_THREADS);
+    }
+
+    public JerseyRetryManager(final MetricRegistry metrics, final Class<?> klass, final int maxRetries, final Duration maxDuration,
+                              final Set<Integer> retriableStatusCodes, final int threads) {
+        super (metrics, klass, threads);
         this.maxRetries = maxRetries;
         this.expirationMS = ((maxDuration == null)
                 ? DEFAULT_MAX_DURATION
@@ -0,0 +1,34 @@
+package com.jamierf.mediamanager.io.retry;
+
+import com.codahale.metrics.MetricRegistry;
+import com.jamierf.mediamanager.config.RetryConfiguration;
+import com.jamierf.mediamanager.io.HostRateLimiter;
+
+/**
+ * Takes a permit from a {@link HostRateLimiter} before every attempt, retry and hedged copy of a request,
+ * so each host only sees requests at its configured rate. Attempts wait for their permit on the retry
+ * manager's timer rather than holding a thread, and a call cancelled while waiting gives its permit back.
+ */
+public class RateLimitedRetryManager extends CircuitBreakerRetryManager {
+
+    private final HostRateLimiter rateLimiter;
+
+    public RateLimitedRetryManager(final MetricRegistry metrics, final Class<?> klass, final RetryConfiguration config, final HostRateLimiter rateLimiter) {
+        super (metrics, klass, config);
+
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected long reservePermit(final String host, final boolean wait) {
+        if (wait)
+            return rateLimiter.reserve(host);
+
+        return rateLimiter.tryReserve(host) ? 0 : -1;
+    }
+
+    @Override
+    protected void releasePermit(final String host) {
+        rateLimiter.release(host);
+    }
+}
@@ -0,0 +1,51 @@
+package com.jamierf.mediamanager.io.retry;
+
+/**
+ * Limits retries against a host to a fraction of the requests made to it, so retrying can't multiply
+ * the load on a host which is already struggling. Every request adds the ratio to the balance, and every
+ * retry takes one from it. The balance is capped at the reserve, which also slowly refills on its own so
+ * hosts we rarely talk to can still be retried.
+ */
+public class RetryBudget {
+
+    private static final long RESERVE_REFILL_MS = 60 * 1000; // one retry per minute
+
+    private final double ratio;
+    private final int reserve;
+
+    private double balance;
+    private long refilledAtMS;
+
+    public RetryBudget(double ratio, int reserve) {
+        this.ratio = ratio;
+        this.reserve = reserve;
+
+        balance = reserve;
+        refilledAtMS = System.currentTimeMillis();
+    }
+
+    private void refill() {
+        final long now = System.currentTimeMillis();
+        balance = Math.min(reserve, balance + (double) (now - refilledAtMS) / RESERVE_REFILL_MS);
+        refilledAtMS = now;
+    }
+
+    public synchronized void deposit() {
+        this.refill();
+        balance = Math.min(reserve, balance + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        this.refill();
+        if (balance < 1)
+            return false;
+
+        balance -= 1;
+        return true;
+    }
+
+    public synchronized double getBalance() {
+        this.refill();
+        return balance;
+    }
+}
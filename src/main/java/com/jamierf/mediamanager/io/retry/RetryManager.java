@@ -1,24 +1,308 @@
 package com.jamierf.mediamanager.io.retry;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Retries failed calls until {@link #retryFailure} gives up. Attempts are made on a small shared pool,
+ * and each retry is scheduled to run after {@link #getRetryDelay}, so no thread sits idle while a call
+ * is backing off. Likewise an attempt waiting for a permit from {@link #reservePermit} waits on a timer
+ * rather than a thread. The blocking {@link #apply} methods simply wait on the result.
+ *
+ * An attempt still running {@link #getHedgeDelay} after it was given its permit has a second copy sent
+ * alongside it, and the first to succeed is used. A hedged copy is only sent if a permit is free straight
+ * away. Both retries and these hedged copies must first pass {@link #acquireRetry}.
+ */
+abstract public class RetryManager implements Managed {
+    private static final Logger LOG = LoggerFactory.getLogger(RetryManager.class);
+
+    public static final int DEFAULT_THREADS = 8;
+
+    private final ScheduledExecutorService timerPool;
+    private final ExecutorService callPool;
+
+    protected RetryManager() {
+        this (DEFAULT_THREADS);
+    }
+
+    protected RetryManager(int threads) {
+        timerPool = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("retry-timer-%d").setDaemon(true).build());
+        callPool = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("retry-%d").setDaemon(true).build());
+    }
 
-abstract public class RetryManager {
     abstract protected boolean retryFailure(Exception e, int attempts, long startTimeMS);
 
+    /**
+     * @return how long to wait after the given number of failed attempts before trying again
+     */
+    protected long getRetryDelay(int attempts) {
+        return 0;
+    }
+
+    /**
+     * @return how long to wait for an attempt against the given host before sending another copy of it
+     * alongside, or -1 to not do so
+     */
+    protected long getHedgeDelay(String host) {
+        return -1;
+    }
+
+    /**
+     * Reserves a permit for a copy of an attempt against the given host, which may be null if it is unknown.
+     *
+     * @return how long to wait before the copy may be made, or -1 if wait is false and it can't be made
+     * straight away
+     */
+    protected long reservePermit(String host, boolean wait) {
+        return 0;
+    }
+
+    /**
+     * Gives back a permit reserved with a wait which will no longer be used, as the call was cancelled
+     * while waiting for it.
+     */
+    protected void releasePermit(String host) {
+
+    }
+
+    /**
+     * Called before each retry or additional copy of an attempt against the given host.
+     *
+     * @return false if it shouldn't be made
+     */
+    protected boolean acquireRetry(String host) {
+        return true;
+    }
+
+    /**
+     * Wraps each attempt of a call against the given host, which may be null if it is unknown.
+     */
+    protected <T> Callable<T> decorate(String host, Callable<T> callable) {
+        return callable;
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+        timerPool.shutdownNow();
+        callPool.shutdownNow();
+    }
+
     public <T> T apply(Callable<T> callable) {
-        long startTimeMS = System.currentTimeMillis();
-        int attempts = 0;
+        return this.apply(null, callable);
+    }
+
+    /**
+     * Applies the callable to a request against the given host, blocking until it succeeds or is given up on.
+     */
+    public <T> T apply(String host, Callable<T> callable) {
+        final ListenableFuture<T> future = this.applyAsync(host, callable);
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+        catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Applies the callable to a request against the given host. Cancelling the returned future stops
+     * any further retries.
+     */
+    public <T> ListenableFuture<T> applyAsync(final String host, Callable<T> callable) {
+        final SettableFuture<T> future = SettableFuture.create();
+        final Callable<T> decorated = this.decorate(host, callable);
+        final long startTimeMS = System.currentTimeMillis();
+
+        final Future<?> first = this.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                attempt(host, decorated, future, 1, startTimeMS);
+            }
+        }, 0);
+
+        if (first == null)
+            future.setException(new RejectedExecutionException("Retry manager is shut down"));
+
+        return future;
+    }
+
+    private <T> void attempt(final String host, final Callable<T> callable, final SettableFuture<T> future, final int attempts, final long startTimeMS) {
+        if (future.isDone())
+            return;
+
+        final long permitDelayMS = this.reservePermit(host, true);
+        if (permitDelayMS <= 0) {
+            this.start(host, callable, future, attempts, startTimeMS);
+            return;
+        }
+
+        final Future<?> permitted = this.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                if (!future.isDone())
+                    start(host, callable, future, attempts, startTimeMS);
+            }
+        }, permitDelayMS);
+
+        if (permitted == null) {
+            future.setException(new RejectedExecutionException("Retry manager is shut down"));
+            return;
+        }
+
+        // Don't hold on to the permit if the call is cancelled before its turn comes
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled() && permitted.cancel(false))
+                    releasePermit(host);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private <T> void start(final String host, final Callable<T> callable, final SettableFuture<T> future, final int attempts, final long startTimeMS) {
+        // The number of copies of this attempt still in flight, and the last failure of any of them
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        final long hedgeDelayMS = this.getHedgeDelay(host);
+        final Future<?> hedge = hedgeDelayMS < 0 ? null : this.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                // Make sure the attempt still needs another copy before spending anything on one
+                if (future.isDone() || !RetryManager.join(outstanding))
+                    return;
+
+                // Don't queue behind our own rate limit, that would only delay every later request to the host
+                if (!acquireRetry(host) || reservePermit(host, false) < 0) {
+                    finish(host, callable, future, attempts, startTimeMS, outstanding, failure);
+                    return;
+                }
+
+                call(host, callable, future, attempts, startTimeMS, outstanding, failure);
+            }
+        }, hedgeDelayMS);
+
+        this.call(host, callable, future, attempts, startTimeMS, outstanding, failure);
+
+        if (hedge != null)
+            hedge.cancel(false);
+    }
+
+    private static boolean join(AtomicInteger outstanding) {
+        // Only join an attempt which hasn't already finished
         while (true) {
-            try {
-                ++attempts;
-                return callable.call();
-            } catch (Exception e) {
-                if (!retryFailure(e, attempts, startTimeMS)) {
-                    Throwables.propagateIfPossible(e);
-                    throw Throwables.propagate(e);
+            final int current = outstanding.get();
+            if (current == 0)
+                return false;
+
+            if (outstanding.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    private <T> void call(final String host, final Callable<T> callable, final SettableFuture<T> future, final int attempts, final long startTimeMS, final AtomicInteger outstanding, final AtomicReference<Exception> failure) {
+        try {
+            final T result = callable.call();
+
+            // Another copy got there first
+            if (!future.set(result))
+                RetryManager.discard(result);
+        }
+        catch (Exception e) {
+            failure.set(e);
+        }
+        catch (Throwable t) {
+            future.setException(t);
+        }
+
+        this.finish(host, callable, future, attempts, startTimeMS, outstanding, failure);
+    }
+
+    private <T> void finish(final String host, final Callable<T> callable, final SettableFuture<T> future, final int attempts, final long startTimeMS, final AtomicInteger outstanding, final AtomicReference<Exception> failure) {
+        // Leave it to the last copy in flight to decide what happens next
+        if (outstanding.decrementAndGet() > 0 || future.isDone())
+            return;
+
+        final Exception e = failure.get();
+        if (!retryFailure(e, attempts, startTimeMS) || !acquireRetry(host)) {
+            future.setException(e);
+            return;
+        }
+
+        final Future<?> retry = this.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                attempt(host, callable, future, attempts + 1, startTimeMS);
+            }
+        }, this.getRetryDelay(attempts));
+
+        if (retry == null)
+            future.setException(e);
+    }
+
+    private Future<?> dispatch(final Runnable runnable, long delayMS) {
+        try {
+            if (delayMS <= 0)
+                return callPool.submit(runnable);
+
+            // The timer only hands the runnable over, so a slow call never holds up another
+            return timerPool.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    callPool.execute(runnable);
                 }
+            }, delayMS, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            // We're shutting down
+            return null;
+        }
+    }
+
+    private static void discard(Object result) {
+        // Don't leak the response body of a request we no longer need
+        if (result instanceof Optional)
+            result = ((Optional<?>) result).orNull();
+
+        if (result instanceof Closeable) {
+            try {
+                ((Closeable) result).close();
+            }
+            catch (IOException e) {
+                LOG.debug("Failed to close discarded result", e);
             }
         }
     }
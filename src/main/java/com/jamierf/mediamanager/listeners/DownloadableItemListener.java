@@ -41,20 +41,17 @@ public class DownloadableItemListener implements ItemListener<DownloadableItem>
         }
     }
 
-    private void updateEpisode(Episode episode) {
-        // Make a copy with the PENDING state
-        episode = episode.copyWithState(State.PENDING);
-
-        // Update the database
+    private boolean transitionEpisode(Name name, State from, State to) {
         try {
-            shows.addOrUpdate(episode);
+            return shows.transition(name, from, to);
         } catch (IOException e) {
-            LOG.error("Error updating episode: " + episode, e);
+            LOG.error("Error updating episode: " + name, e);
+            return false;
         }
     }
 
     @Override
-    public synchronized void onNewItem(DownloadableItem item) {
+    public void onNewItem(DownloadableItem item) {
         final NameAndQuality nameAndQuality = episodeNameParser.parseFilename(item.getTitle());
         if (nameAndQuality == null) {
             LOG.trace("Failed to parse episode title: " + item.getTitle());
@@ -74,6 +71,12 @@ public class DownloadableItemListener implements ItemListener<DownloadableItem>
             return;
         }
 
+        // Mark the episode as pending so we no longer desire it, if this fails another item got there first
+        if (!this.transitionEpisode(nameAndQuality.getName(), State.DESIRED, State.PENDING)) {
+            LOG.trace("Skipping {}, already pending", nameAndQuality);
+            return;
+        }
+
         // This is an episode we want!
         LOG.info("Downloading torrent {}", nameAndQuality);
 
@@ -83,15 +86,9 @@ public class DownloadableItemListener implements ItemListener<DownloadableItem>
         }
         catch (Exception e) {
             LOG.warn("Failed to download torrent", e);
-            return;
-        }
 
-        try {
-            // Mark the episode as pending so we no longer desire it
-            this.updateEpisode(episode.get());
-        }
-        catch (Exception e) {
-            LOG.warn("Failed to update episode in database", e);
+            // Give up our claim so another item can be downloaded instead
+            this.transitionEpisode(nameAndQuality.getName(), State.PENDING, State.DESIRED);
         }
     }
 
@@ -1,8 +1,16 @@
 package com.jamierf.mediamanager.managers;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jamierf.mediamanager.db.ShowDatabase;
+import com.jamierf.mediamanager.io.retry.CircuitOpenException;
 import com.jamierf.mediamanager.models.Episode;
 import com.jamierf.mediamanager.models.Name;
 import com.jamierf.mediamanager.parsing.ItemListener;
@@ -20,28 +28,37 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Periodically searches every parser for each desired episode. Searches are queued on a pool per tracker
+ * host, so each tracker is searched as fast as it allows independently of the others, and the results of
+ * each search are passed on to the listeners as soon as it completes.
+ */
 public class BackfillManager implements Managed, Runnable, ParsingManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(BackfillManager.class);
 
-    private static final Duration THROTTLE_DELAY = Duration.seconds(5);
     private static final Duration START_DELAY = Duration.minutes(1);
-    private static final Random RANDOM = new Random();
 
     private final ShowDatabase shows;
     private final Duration delay;
+    private final int concurrencyPerHost;
     private final ScheduledExecutorService bossPool;
+    private final Map<String, ListeningExecutorService> searchPools;
     private final ExecutorService workerPool;
+    private final SearchCache cache;
     private final Collection<SearchParser> parsers;
     private final Collection<ItemListener<SearchItem>> listeners;
     private final AtomicReference<ScheduledFuture<?>> future;
 
-    public BackfillManager(ShowDatabase shows, Duration delay) {
+    public BackfillManager(ShowDatabase shows, Duration delay, int concurrencyPerHost, ExecutorService workerPool, SearchCache cache) {
         this.shows = shows;
         this.delay = delay;
+        this.concurrencyPerHost = concurrencyPerHost;
+        this.workerPool = workerPool;
+        this.cache = cache;
 
         bossPool = Executors.newSingleThreadScheduledExecutor();
-        workerPool = Executors.newCachedThreadPool();
+        searchPools = Maps.newHashMap();
 
         parsers = Lists.newLinkedList();
         listeners = Lists.newLinkedList();
@@ -82,58 +99,103 @@ public class BackfillManager implements Managed, Runnable, ParsingManager {
             }
 
             LOG.info("Starting a backfill for {} episodes", episodes.size());
+            final long startTimeMS = System.currentTimeMillis();
 
-            final int throttleDelayMS = (int) THROTTLE_DELAY.toMilliseconds();
-            for (Episode episode : episodes) {
-                try {
-                    this.search(episode.getName());
-
-                    // sleep for a delay around THROTTLE_DELAY, +/- 50%
-                    final long delay = throttleDelayMS - (throttleDelayMS / 2) + RANDOM.nextInt(throttleDelayMS);
-                    Thread.sleep(delay);
-                }
-                catch (Exception e) {
-                    LOG.error("Failed searching for episode: " + episode.getName(), e);
-                }
-            }
+            final List<ListenableFuture<?>> searches = Lists.newArrayList();
+            for (Episode episode : episodes)
+                searches.addAll(this.search(episode.getName()));
+
+            // Wait for every search to finish, so backfills never overlap
+            Futures.successfulAsList(searches).get();
+
+            LOG.info("Finished backfill of {} episodes in {}ms", episodes.size(), System.currentTimeMillis() - startTimeMS);
         }
         catch (IOException e) {
             LOG.error("Failed to fetch list of desired episodes", e);
         }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            // Failed searches are passed on to the listeners, so we never get here
+            LOG.error("Failed waiting for backfill to finish", e);
+        }
     }
 
-    public void search(final Name name) {
-        final String query = name.toString();
-        LOG.debug("Running search parsers for: {}", query);
+    private ListeningExecutorService getSearchPool(String host) {
+        synchronized (searchPools) {
+            ListeningExecutorService pool = searchPools.get(host);
+            if (pool == null) {
+                pool = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(concurrencyPerHost,
+                        new ThreadFactoryBuilder().setNameFormat("backfill-" + host + "-%d").build()));
+                searchPools.put(host, pool);
+            }
 
-        // List to hold all parsed results, from all parsers
-        final Set<SearchItem> items = Sets.newHashSet();
-        final Collection<Exception> exceptions = new LinkedList<Exception>();
+            return pool;
+        }
+    }
 
-        // Run every parser and add the results
+    /**
+     * Queues a search of every parser for the given episode. The results of each parser are passed on to
+     * the listeners as soon as it completes.
+     */
+    public Collection<ListenableFuture<?>> search(final Name name) {
+        final String query = name.toString();
+        LOG.debug("Queueing search parsers for: {}", query);
+
+        final ImmutableList.Builder<ListenableFuture<?>> searches = ImmutableList.builder();
         synchronized (parsers) {
             for (final SearchParser parser : parsers) {
-                try {
-                    // Fetch a list of items from this parser
-                    final Set<SearchItem> parsedItems = parser.search(query);
-                    items.addAll(parsedItems);
-                }
-                catch (ClientHandlerException e) {
-                    LOG.debug("Timeout connecting to {}", parser.getUrl());
-                    exceptions.add(e);
-                }
-                catch (UniformInterfaceException e) {
-                    final int status = e.getResponse().getStatus();
-                    LOG.debug("HTTP error {} from {}", status, parser.getUrl());
-                    exceptions.add(e);
-                }
-                catch (Exception e) {
-                    LOG.debug("Caught exception while parsing search", e);
-                    exceptions.add(e);
-                }
+                searches.add(this.getSearchPool(parser.getUrl().getHost()).submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        search(parser, query);
+                    }
+                }));
             }
         }
 
+        return searches.build();
+    }
+
+    private void search(SearchParser parser, String query) {
+        try {
+            final Optional<Set<SearchItem>> cachedItems = cache.get(parser, query);
+            if (cachedItems.isPresent()) {
+                LOG.debug("Using cached results from {}", parser.getUrl());
+                this.notifyListeners(cachedItems.get(), Collections.<Throwable>emptyList());
+                return;
+            }
+
+            // Fetch a list of items from this parser
+            final Set<SearchItem> parsedItems = parser.search(query);
+            cache.put(parser, query, parsedItems);
+
+            this.notifyListeners(parsedItems, Collections.<Throwable>emptyList());
+        }
+        catch (CircuitOpenException e) {
+            LOG.debug("Skipping {}, {}", parser.getUrl(), e.getMessage());
+            this.notifyListeners(Collections.<SearchItem>emptySet(), Collections.<Throwable>singletonList(e));
+        }
+        catch (ClientHandlerException e) {
+            LOG.debug("Timeout connecting to {}", parser.getUrl());
+            this.notifyListeners(Collections.<SearchItem>emptySet(), Collections.<Throwable>singletonList(e));
+        }
+        catch (UniformInterfaceException e) {
+            final int status = e.getResponse().getStatus();
+            LOG.debug("HTTP error {} from {}", status, parser.getUrl());
+            this.notifyListeners(Collections.<SearchItem>emptySet(), Collections.<Throwable>singletonList(e));
+        }
+        catch (Exception e) {
+            LOG.debug("Caught exception while parsing search", e);
+            this.notifyListeners(Collections.<SearchItem>emptySet(), Collections.<Throwable>singletonList(e));
+        }
+    }
+
+    private void notifyListeners(final Collection<SearchItem> items, final Collection<Throwable> exceptions) {
+        if (items.isEmpty() && exceptions.isEmpty())
+            return;
+
         // Alert every listener of each item and exception
         synchronized (listeners) {
             for (final ItemListener<SearchItem> listener : listeners) {
@@ -159,7 +221,13 @@ public class BackfillManager implements Managed, Runnable, ParsingManager {
         LOG.debug("Shutting down");
 
         future.get().cancel(false);
-        bossPool.shutdown();
+        bossPool.shutdownNow();
+
+        synchronized (searchPools) {
+            for (ExecutorService pool : searchPools.values())
+                pool.shutdownNow();
+        }
+
         workerPool.shutdown();
     }
 
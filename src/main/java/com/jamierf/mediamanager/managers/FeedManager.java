@@ -1,9 +1,17 @@
 package com.jamierf.mediamanager.managers;
 
-import com.fasterxml.jackson.jaxrs.util.LRUMap;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jamierf.mediamanager.io.retry.CircuitOpenException;
 import com.jamierf.mediamanager.parsing.FeedItem;
 import com.jamierf.mediamanager.parsing.FeedParser;
 import com.jamierf.mediamanager.parsing.ItemListener;
@@ -11,100 +19,213 @@ import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class FeedManager<T extends FeedItem> implements Managed, Runnable, ParsingManager {
+/**
+ * Periodically fetches every parser and passes new items on to the listeners. Each parser is polled on
+ * its own schedule, between the minimum and maximum delay depending on how often it has new items (see
+ * {@link FeedSchedule}), and the next poll is only scheduled once the previous one completes. Parsers are
+ * fetched concurrently and the results of each are passed on as soon as it completes, so a slow parser
+ * does not hold up the others. A fetch still running after the fetch timeout is cancelled, along with any
+ * further retries.
+ * Responses are parsed, and results handled, on a small pool of our own rather than the retry manager's
+ * threads, and new items are handed to the listeners on the given worker pool.
+ *
+ * The uids of items already seen are tracked per parser, and if given a state directory are kept there so
+ * items are not passed on again after a restart.
+ */
+public class FeedManager<T extends FeedItem> implements Managed, ParsingManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(FeedManager.class);
 
-    private static final int CACHE_SIZE = 1000;
+    private static final int PARSE_THREADS = 2;
 
-    private final Duration delay;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+    private final Duration fetchTimeout;
+    private final File stateDir;
+    private final Size seenItemsSize;
     private final ScheduledExecutorService bossPool;
+    private final ExecutorService parsePool;
     private final ExecutorService workerPool;
-    private final Collection<FeedParser<T>> parsers;
+    private final Map<FeedParser<T>, FeedSchedule> parsers;
+    private final Map<FeedParser<T>, SeenItems> seenItems;
+    private final Map<FeedParser<T>, ScheduledFuture<?>> polls;
     private final Collection<ItemListener<T>> listeners;
-    private final Set<T> oldItems;
-    private final AtomicReference<ScheduledFuture<?>> future;
+    private final AtomicBoolean running;
 
-    public FeedManager(Duration delay) {
-        this.delay = delay;
+    public FeedManager(Duration minDelay, Duration maxDelay, Duration fetchTimeout, File stateDir, Size seenItemsSize, ExecutorService workerPool) throws IOException {
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.fetchTimeout = fetchTimeout;
+        this.stateDir = stateDir;
+        this.seenItemsSize = seenItemsSize;
+        this.workerPool = workerPool;
+
+        if (stateDir != null && !stateDir.isDirectory() && !stateDir.mkdirs())
+            throw new IOException("Unable to create state directory: " + stateDir);
 
         bossPool = Executors.newSingleThreadScheduledExecutor();
-        workerPool = Executors.newCachedThreadPool();
+        parsePool = Executors.newFixedThreadPool(PARSE_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("feed-result-%d").build());
 
-        parsers = Lists.newLinkedList();
+        parsers = Maps.newLinkedHashMap();
+        seenItems = Maps.newHashMap();
+        polls = Maps.newHashMap();
         listeners = Lists.newLinkedList();
 
-        // Store a cache of already seen items with LRU eviction
-        oldItems = Sets.newSetFromMap(new LRUMap<T, Boolean>(16, CACHE_SIZE));
-
-        future = new AtomicReference<>();
+        running = new AtomicBoolean(false);
     }
 
     @Override
     public void start() {
-        // Only schedule if the future hasn't already been set
-        if (!future.compareAndSet(null, bossPool.scheduleWithFixedDelay(this, 0, delay.toMilliseconds(), TimeUnit.MILLISECONDS)))
+        if (!running.compareAndSet(false, true))
             throw new RuntimeException("Feeder is already running");
 
+        synchronized (parsers) {
+            for (FeedParser<T> parser : parsers.keySet())
+                this.schedule(parser, 0);
+        }
+
         if (LOG.isDebugEnabled())
-            LOG.debug("Started with a delay of {}", delay);
+            LOG.debug("Started with a delay of {} to {}", minDelay, maxDelay);
     }
 
-    @Override
-    public void run() {
-        if (LOG.isDebugEnabled())
-            LOG.debug("Running feed parsers");
+    private void schedule(final FeedParser<T> parser, long delayMS) {
+        synchronized (parsers) {
+            // The parser might have been removed, or we stopped, while it was being fetched
+            if (!running.get() || !parsers.containsKey(parser))
+                return;
 
-        // List to hold all parsed results, from all parsers
-        final Set<T> items = Sets.newHashSet();
-        final Collection<Exception> exceptions = new LinkedList<Exception>();
+            polls.put(parser, bossPool.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    poll(parser);
+                }
+            }, delayMS, TimeUnit.MILLISECONDS));
+        }
+    }
 
-        // Run every parser and add the results
+    private void poll(final FeedParser<T> parser) {
+        final FeedSchedule feedSchedule;
+        final SeenItems seen;
         synchronized (parsers) {
-            for (final FeedParser<T> parser : parsers) {
-                try {
-                    // Fetch a list of items from this parser
-                    final Set<T> parsedItems = parser.parse();
-                    for (T item : parsedItems) {
-                        // If we've already seen this item then skip it
-                        if (oldItems.contains(item))
-                            continue;
-
-                        // Add the item to our set of new items, and add it to our seen items
-                        items.add(item);
-                        oldItems.add(item);
-                    }
-                }
-                catch (ClientHandlerException e) {
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("Timeout connecting to {}", parser.getUrl());
+            feedSchedule = parsers.get(parser);
+            seen = seenItems.get(parser);
+        }
 
-                    exceptions.add(e);
-                }
-                catch (UniformInterfaceException e) {
-                    final int status = e.getResponse().getStatus();
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("HTTP error {} from {}", status, parser.getUrl());
+        if (feedSchedule == null)
+            return;
 
-                    exceptions.add(e);
-                }
-                catch (Exception e) {
-                    LOG.warn("Caught exception while parsing feed " + parser.getUrl(), e);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Running feed parser for {}", parser.getUrl());
 
-                    exceptions.add(e);
-                }
+        // Requests are made, and retried, on the retry manager's pool so this returns straight away. The
+        // response is parsed on our own pool, so a slow parse never holds up anyone else's requests.
+        final ListenableFuture<Optional<Set<T>>> result = parser.parseAsync(new Predicate<T>() {
+            @Override
+            public boolean apply(T item) {
+                return seen.contains(item.getUid());
+            }
+        }, parsePool);
+
+        final ScheduledFuture<?> deadline = bossPool.schedule(new Runnable() {
+            @Override
+            public void run() {
+                result.cancel(true);
+            }
+        }, fetchTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+
+        // Never on the retry manager's threads, a listener may block on a request of its own
+        Futures.addCallback(result, new FutureCallback<Optional<Set<T>>>() {
+            @Override
+            public void onSuccess(Optional<Set<T>> parsedItems) {
+                deadline.cancel(false);
+
+                final Collection<T> items = filterNewItems(seen, parsedItems.or(ImmutableSet.<T>of()));
+                notifyListeners(items, Collections.<Throwable>emptyList());
+
+                // An absent result means the feed was not modified since the last poll
+                final long delayMS = feedSchedule.update(items.size(), !parsedItems.isPresent());
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Found {} new items from {}, next poll in {}ms", items.size(), parser.getUrl(), delayMS);
+
+                schedule(parser, delayMS);
             }
+
+            @Override
+            public void onFailure(Throwable t) {
+                deadline.cancel(false);
+
+                notifyListeners(Collections.<T>emptyList(), Collections.singletonList(handleFailure(parser, t)));
+
+                // Leave the delay as it is, failures are backed off by the retry manager
+                schedule(parser, feedSchedule.getDelay());
+            }
+        }, parsePool);
+    }
+
+    private Collection<T> filterNewItems(SeenItems seen, Set<T> parsedItems) {
+        final ImmutableList.Builder<T> items = ImmutableList.builder();
+
+        for (T item : parsedItems) {
+            // If we've already seen this item then skip it, otherwise add it to our seen items
+            if (seen.add(item.getUid()))
+                items.add(item);
+        }
+
+        final Collection<T> newItems = items.build();
+
+        // Persist straight away, so nothing is processed twice even if we don't shut down cleanly
+        if (!newItems.isEmpty())
+            seen.save();
+
+        return newItems;
+    }
+
+    private Throwable handleFailure(FeedParser<T> parser, Throwable t) {
+        if (t instanceof CancellationException) {
+            LOG.warn("Timed out fetching {} after {}", parser.getUrl(), fetchTimeout);
+
+            return new TimeoutException("Timed out fetching " + parser.getUrl());
         }
 
+        if (t instanceof CircuitOpenException) {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Skipping {}, {}", parser.getUrl(), t.getMessage());
+        }
+        else if (t instanceof ClientHandlerException) {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Timeout connecting to {}", parser.getUrl());
+        }
+        else if (t instanceof UniformInterfaceException) {
+            final int status = ((UniformInterfaceException) t).getResponse().getStatus();
+            if (LOG.isDebugEnabled())
+                LOG.debug("HTTP error {} from {}", status, parser.getUrl());
+        }
+        else {
+            LOG.warn("Caught exception while parsing feed " + parser.getUrl(), t);
+        }
+
+        return t;
+    }
+
+    private void notifyListeners(final Collection<T> items, final Collection<Throwable> exceptions) {
+        if (items.isEmpty() && exceptions.isEmpty())
+            return;
+
         // Alert every listener of each item and exception
         synchronized (listeners) {
             for (final ItemListener<T> listener : listeners) {
@@ -124,32 +245,54 @@ public class FeedManager<T extends FeedItem> implements Managed, Runnable, Parsi
 
     @Override
     public void stop() {
-        if (future.get() == null)
+        if (!running.compareAndSet(true, false))
             throw new RuntimeException("Feeder is not running");
 
         if (LOG.isDebugEnabled())
             LOG.debug("Shutting down");
 
-        future.get().cancel(false);
-        bossPool.shutdown();
+        synchronized (parsers) {
+            for (ScheduledFuture<?> poll : polls.values())
+                poll.cancel(false);
+
+            polls.clear();
+        }
+
+        bossPool.shutdownNow();
+        parsePool.shutdown();
         workerPool.shutdown();
     }
 
+    private File getSeenItemsFile(FeedParser<T> parser) {
+        if (stateDir == null)
+            return null;
+
+        // Feed URLs often contain passkeys, so keep them out of the file name
+        return new File(stateDir, Hashing.sha1().hashString(parser.getUrl().toString(), StandardCharsets.UTF_8) + ".seen");
+    }
+
     public void addParser(FeedParser<T> parser) {
         synchronized (parsers) {
-            parsers.add(parser);
+            parsers.put(parser, new FeedSchedule(minDelay, maxDelay));
+            seenItems.put(parser, new SeenItems(this.getSeenItemsFile(parser), seenItemsSize));
+            this.schedule(parser, 0);
         }
     }
 
     public Collection<FeedParser<T>> getParsers() {
         synchronized (parsers) {
-            return ImmutableSet.copyOf(parsers);
+            return ImmutableSet.copyOf(parsers.keySet());
         }
     }
 
     public void removeParser(FeedParser<T> parser) {
         synchronized (parsers) {
             parsers.remove(parser);
+            seenItems.remove(parser);
+
+            final ScheduledFuture<?> poll = polls.remove(parser);
+            if (poll != null)
+                poll.cancel(false);
         }
     }
 
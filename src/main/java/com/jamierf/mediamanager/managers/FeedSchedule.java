@@ -0,0 +1,57 @@
+package com.jamierf.mediamanager.managers;
+
+import io.dropwizard.util.Duration;
+
+/**
+ * Works out how long to wait before polling a feed again, based on how often it has new items. Keeps an
+ * exponentially weighted moving average of the rate new items arrive at and of the share of polls where
+ * the feed was not modified, and aims to poll about once per new item, backing off further for feeds that
+ * are mostly unchanged. A poll which found new items drops straight back to the minimum delay, since
+ * items tend to arrive in bursts. The delay never more than doubles between polls.
+ */
+public class FeedSchedule {
+
+    private static final double ALPHA = 0.3;
+    private static final double TARGET_ITEMS_PER_POLL = 1.0;
+    private static final double MAX_GROWTH = 2.0;
+
+    private final long minDelay;
+    private final long maxDelay;
+
+    private double itemRate; // new items per millisecond
+    private double unchangedShare;
+    private long delay;
+
+    public FeedSchedule(Duration minDelay, Duration maxDelay) {
+        this.minDelay = minDelay.toMilliseconds();
+        this.maxDelay = Math.max(this.minDelay, maxDelay.toMilliseconds());
+
+        delay = this.minDelay;
+    }
+
+    /**
+     * Records the result of a poll made {@link #getDelay()} milliseconds after the previous one.
+     *
+     * @param newItems how many items the poll found that had not been seen before
+     * @param unchanged whether the server reported the feed was not modified since the previous poll
+     * @return the delay in milliseconds until the next poll
+     */
+    public synchronized long update(int newItems, boolean unchanged) {
+        itemRate = ALPHA * ((double) newItems / Math.max(delay, 1)) + (1 - ALPHA) * itemRate;
+        unchangedShare = ALPHA * (unchanged ? 1 : 0) + (1 - ALPHA) * unchangedShare;
+
+        if (newItems > 0) {
+            delay = minDelay;
+        }
+        else {
+            final double target = itemRate > 0 ? (TARGET_ITEMS_PER_POLL / itemRate) * (1 + unchangedShare) : maxDelay;
+            delay = (long) Math.max(minDelay, Math.min(Math.min(target, delay * MAX_GROWTH), maxDelay));
+        }
+
+        return delay;
+    }
+
+    public synchronized long getDelay() {
+        return delay;
+    }
+}
@@ -0,0 +1,154 @@
+package com.jamierf.mediamanager.managers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jamierf.mediamanager.config.WorkerPoolConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed size pool with a bounded queue, for handing work off to listeners. Once the queue is full the
+ * configured saturation policy applies: the submitting thread waits for room in the queue, runs the task
+ * itself, or the new or oldest queued task is dropped. Queue depth, active threads, time spent queued and
+ * running, and rejections are reported under the given name.
+ *
+ * By default the submitting thread waits, so no work is lost and listeners never run on a thread which
+ * was not meant for them. Either way the submitting thread must be free to block, so tasks must never be
+ * submitted from the retry manager's threads.
+ */
+public class InstrumentedThreadPool extends ThreadPoolExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstrumentedThreadPool.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static class BlockPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            // Like the other policies, silently drop tasks once shut down
+            if (executor.isShutdown())
+                return;
+
+            try {
+                executor.getQueue().put(task);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting for room in the queue", e);
+            }
+        }
+    }
+
+    private static RejectedExecutionHandler getHandler(WorkerPoolConfiguration.SaturationPolicy policy) {
+        switch (policy) {
+            case BLOCK:
+                return new BlockPolicy();
+            case CALLER_RUNS:
+                return new CallerRunsPolicy();
+            case DISCARD:
+                return new DiscardPolicy();
+            case DISCARD_OLDEST:
+                return new DiscardOldestPolicy();
+            default:
+                throw new IllegalArgumentException("Unknown saturation policy: " + policy);
+        }
+    }
+
+    private final String name;
+    private final WorkerPoolConfiguration.SaturationPolicy policy;
+    private final Timer waitTimer;
+    private final Timer runTimer;
+    private final Meter rejected;
+
+    public InstrumentedThreadPool(WorkerPoolConfiguration config, MetricRegistry metrics, String name) {
+        super (config.getThreads(), config.getThreads(), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(config.getQueueSize()),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").build());
+
+        this.name = name;
+        this.policy = config.getSaturationPolicy();
+
+        // Don't hold on to threads while idle
+        this.allowCoreThreadTimeOut(true);
+        this.setRejectedExecutionHandler(new InstrumentedRejectionHandler(InstrumentedThreadPool.getHandler(policy)));
+
+        waitTimer = metrics.timer(MetricRegistry.name(name, "wait"));
+        runTimer = metrics.timer(MetricRegistry.name(name, "duration"));
+        rejected = metrics.meter(MetricRegistry.name(name, "rejected"));
+
+        metrics.register(MetricRegistry.name(name, "queue-depth"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getQueue().size();
+            }
+        });
+
+        metrics.register(MetricRegistry.name(name, "active-threads"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getActiveCount();
+            }
+        });
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new InstrumentedRunnable(command));
+    }
+
+    private class InstrumentedRunnable implements Runnable {
+
+        private final Runnable delegate;
+        private final long submittedNS;
+
+        private InstrumentedRunnable(Runnable delegate) {
+            this.delegate = delegate;
+
+            submittedNS = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            waitTimer.update(System.nanoTime() - submittedNS, TimeUnit.NANOSECONDS);
+
+            final Timer.Context context = runTimer.time();
+            try {
+                delegate.run();
+            }
+            finally {
+                context.stop();
+            }
+        }
+    }
+
+    private class InstrumentedRejectionHandler implements RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler delegate;
+
+        private InstrumentedRejectionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (!executor.isShutdown()) {
+                rejected.mark();
+
+                if (policy == WorkerPoolConfiguration.SaturationPolicy.DISCARD || policy == WorkerPoolConfiguration.SaturationPolicy.DISCARD_OLDEST)
+                    LOG.warn("Worker pool {} is saturated, discarding a task", name);
+            }
+
+            delegate.rejectedExecution(task, executor);
+        }
+    }
+}
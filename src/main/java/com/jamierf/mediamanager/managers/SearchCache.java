@@ -0,0 +1,235 @@
+package com.jamierf.mediamanager.managers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.jamierf.mediamanager.io.ParserRegistry;
+import com.jamierf.mediamanager.parsing.search.SearchItem;
+import com.jamierf.mediamanager.parsing.search.SearchParser;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The results of recent searches, kept on disk in a file per parser and query. Results expire after the
+ * TTL, or the negative TTL if there were none, as an empty search is likely to change sooner when the
+ * episode has only just aired. Once the files take up more than the maximum size the least recently used
+ * are removed.
+ *
+ * Without a directory nothing is cached.
+ */
+public class SearchCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchCache.class);
+
+    private static final ObjectMapper JSON = Jackson.newObjectMapper();
+    private static final String EXTENSION = ".json";
+
+    private static class Entry {
+
+        @JsonProperty
+        private final long cachedAt;
+
+        @JsonProperty
+        private final Set<SearchItem> items;
+
+        @JsonCreator
+        private Entry(
+                @JsonProperty("cachedAt") long cachedAt,
+                @JsonProperty("items") Set<SearchItem> items) {
+            this.cachedAt = cachedAt;
+            this.items = items;
+        }
+    }
+
+    private static String getKey(SearchParser parser, String query) {
+        // Parser URLs often contain passkeys, so keep them out of the file name
+        final String key = ParserRegistry.getName(parser.getClass()) + "\n" + parser.getUrl() + "\n" + query;
+        return Hashing.sha1().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    private final File dir;
+    private final long ttlMS;
+    private final long negativeTtlMS;
+    private final long maxSize;
+
+    // Size of each file, least recently used first, guarded by itself
+    private final LinkedHashMap<String, Long> files;
+    private long size;
+
+    public SearchCache(File dir, Duration ttl, Duration negativeTtl, Size maxSize) throws IOException {
+        this.dir = dir;
+        this.ttlMS = ttl.toMilliseconds();
+        this.negativeTtlMS = negativeTtl.toMilliseconds();
+        this.maxSize = maxSize.toBytes();
+
+        files = new LinkedHashMap<>(16, 0.75f, true);
+
+        if (dir != null) {
+            if (!dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Unable to create search cache directory: " + dir);
+
+            this.load();
+        }
+    }
+
+    private void load() {
+        final File[] existing = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(EXTENSION);
+            }
+        });
+
+        if (existing == null)
+            return;
+
+        // Files are touched when used, so the oldest modified is the least recently used
+        Arrays.sort(existing, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        for (File file : existing) {
+            final String name = file.getName();
+            files.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+            size += file.length();
+        }
+
+        LOG.debug("Loaded {} cached searches ({} bytes) from {}", files.size(), size, dir);
+        this.delete(this.evict());
+    }
+
+    private File getFile(String key) {
+        return new File(dir, key + EXTENSION);
+    }
+
+    /**
+     * @return the keys removed from the index, whose files are left for the caller to delete
+     */
+    private List<String> evict() {
+        final List<String> evicted = Lists.newArrayList();
+
+        final Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+
+            size -= eldest.getValue();
+            evicted.add(eldest.getKey());
+        }
+
+        return evicted;
+    }
+
+    private void delete(Collection<String> keys) {
+        for (String key : keys)
+            this.getFile(key).delete();
+    }
+
+    private void remove(String key) {
+        synchronized (files) {
+            final Long removed = files.remove(key);
+            if (removed != null)
+                size -= removed;
+        }
+
+        this.getFile(key).delete();
+    }
+
+    /**
+     * @return the cached results, or absent if there are none or they have expired
+     */
+    public Optional<Set<SearchItem>> get(SearchParser parser, String query) {
+        if (dir == null)
+            return Optional.absent();
+
+        final String key = SearchCache.getKey(parser, query);
+
+        // Only the index is locked, so searches against different hosts never wait on each other's files
+        synchronized (files) {
+            if (files.get(key) == null)
+                return Optional.absent();
+        }
+
+        final File file = this.getFile(key);
+        try {
+            final Entry entry = JSON.readValue(file, Entry.class);
+
+            final long age = System.currentTimeMillis() - entry.cachedAt;
+            if (age > (entry.items.isEmpty() ? negativeTtlMS : ttlMS)) {
+                this.remove(key);
+                return Optional.absent();
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+            return Optional.<Set<SearchItem>>of(ImmutableSet.copyOf(entry.items));
+        }
+        catch (IOException e) {
+            // Most likely evicted since we checked the index
+            LOG.debug("Failed to read cached search from " + file, e);
+
+            this.remove(key);
+            return Optional.absent();
+        }
+    }
+
+    public void put(SearchParser parser, String query, Set<SearchItem> items) {
+        if (dir == null)
+            return;
+
+        final String key = SearchCache.getKey(parser, query);
+        final File file = this.getFile(key);
+
+        File temp = null;
+        try {
+            // Each writer has its own temporary file, in case the same search is cached twice at once
+            temp = File.createTempFile(key, ".tmp", dir);
+
+            JSON.writeValue(temp, new Entry(System.currentTimeMillis(), items));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to cache search in " + file, e);
+
+            if (temp != null)
+                temp.delete();
+
+            return;
+        }
+
+        final long length = file.length();
+        final List<String> evicted;
+        synchronized (files) {
+            final Long previous = files.put(key, length);
+            size += length - (previous == null ? 0 : previous);
+
+            evicted = this.evict();
+        }
+
+        this.delete(evicted);
+    }
+}
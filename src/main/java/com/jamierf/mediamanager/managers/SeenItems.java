@@ -0,0 +1,181 @@
+package com.jamierf.mediamanager.managers;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.dropwizard.util.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The uids of the most recently seen items of a feed, held as 64 bit hashes so the memory used depends on
+ * the budget given rather than the items themselves. Hashes are kept in a ring buffer in the order they
+ * were seen, with an open addressing hash table over them for lookups. Once full the oldest uid is
+ * forgotten to make room for each new one.
+ *
+ * If given a file the hashes are read from it on construction and can be written back with {@link #save()},
+ * oldest first, so the order survives a restart.
+ */
+public class SeenItems {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SeenItems.class);
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final int VERSION = 1;
+    private static final long EMPTY = 0;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    // Each item needs a slot in the ring, and two in the table to keep it at most half full
+    private static final int BYTES_PER_TABLE_SLOT = 12;
+
+    private static long hash(String uid) {
+        final long hash = HASH.hashString(String.valueOf(uid), StandardCharsets.UTF_8).asLong();
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private static int tableSize(Size budget) {
+        final long slots = budget.toBytes() / BYTES_PER_TABLE_SLOT;
+        return (int) Math.max(MIN_TABLE_SIZE, Long.highestOneBit(Math.min(slots, 1 << 30)));
+    }
+
+    private final File file;
+    private final long[] ring;
+    private final long[] table;
+    private final int mask;
+
+    private int head;
+    private int count;
+
+    public SeenItems(File file, Size budget) {
+        this.file = file;
+
+        table = new long[SeenItems.tableSize(budget)];
+        mask = table.length - 1;
+        ring = new long[table.length / 2];
+
+        this.load();
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int find(long hash) {
+        int i = this.slot(hash);
+        while (table[i] != EMPTY && table[i] != hash)
+            i = (i + 1) & mask;
+
+        return i;
+    }
+
+    private void remove(long hash) {
+        int i = this.find(hash);
+        if (table[i] == EMPTY)
+            return;
+
+        table[i] = EMPTY;
+
+        // Shift back any later entries that would no longer be reachable past the gap
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == EMPTY)
+                return;
+
+            final int k = this.slot(table[j]);
+            final boolean movable = i <= j ? (k <= i || k > j) : (k <= i && k > j);
+            if (movable) {
+                table[i] = table[j];
+                table[j] = EMPTY;
+                i = j;
+            }
+        }
+    }
+
+    private boolean add(long hash) {
+        final int i = this.find(hash);
+        if (table[i] != EMPTY)
+            return false;
+
+        if (count == ring.length) {
+            // Forget the oldest item to make room
+            this.remove(ring[head]);
+            ring[head] = hash;
+            head = (head + 1) % ring.length;
+        }
+        else {
+            ring[(head + count) % ring.length] = hash;
+            count++;
+        }
+
+        // The removal might have moved things around, so find the slot again
+        table[this.find(hash)] = hash;
+        return true;
+    }
+
+    /**
+     * @return true if the uid had not been seen before
+     */
+    public synchronized boolean add(String uid) {
+        return this.add(SeenItems.hash(uid));
+    }
+
+    public synchronized boolean contains(String uid) {
+        return table[this.find(SeenItems.hash(uid))] != EMPTY;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    private void load() {
+        if (file == null || !file.isFile())
+            return;
+
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final int version = in.readInt();
+            if (version != VERSION) {
+                LOG.warn("Ignoring seen items {} with unsupported version {}", file, version);
+                return;
+            }
+
+            final int items = in.readInt();
+            for (int i = 0; i < items; i++)
+                this.add(in.readLong());
+
+            LOG.debug("Loaded {} seen items from {}", count, file);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to load seen items from " + file, e);
+        }
+    }
+
+    public synchronized void save() {
+        if (file == null)
+            return;
+
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(VERSION);
+                out.writeInt(count);
+
+                for (int i = 0; i < count; i++)
+                    out.writeLong(ring[(head + i) % ring.length]);
+            }
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to save seen items to " + file, e);
+        }
+    }
+}
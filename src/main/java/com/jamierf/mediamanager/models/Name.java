@@ -48,7 +48,7 @@ public class Name implements Comparable<Name> {
 
         if (episode != name.episode) return false;
         if (season != name.season) return false;
-        if (title != null ? !title.equals(title) : name.title != null) return false;
+        if (title != null ? !title.equals(name.title) : name.title != null) return false;
 
         return true;
     }
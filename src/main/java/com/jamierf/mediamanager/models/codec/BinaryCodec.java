@@ -0,0 +1,103 @@
+package com.jamierf.mediamanager.models.codec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.State;
+
+import java.io.*;
+
+/**
+ * Base for the compact binary model codecs. Every encoding starts with a version byte, followed by the
+ * season, episode and state of the name packed in to a single long, then the title. Rows written as JSON
+ * (which always start with '{') are still decoded, using the JSON codec.
+ *
+ * Decoded titles are interned, so a library of episodes holds a single copy of each show title.
+ */
+public abstract class BinaryCodec<T> implements Codec<T> {
+
+    protected static final byte VERSION = 1;
+
+    private static final byte JSON_START = '{';
+    private static final int FIELD_BITS = 16;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+    private static final int STATE_BITS = 8;
+    private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+    private static final State[] STATES = State.values();
+
+    private static final Interner<String> TITLES = Interners.newWeakInterner();
+
+    protected static long pack(Name name, State state) {
+        Preconditions.checkArgument(name.getSeason() >= 0 && name.getSeason() <= FIELD_MASK, "Season out of range: %s", name.getSeason());
+        Preconditions.checkArgument(name.getEpisode() >= 0 && name.getEpisode() <= FIELD_MASK, "Episode out of range: %s", name.getEpisode());
+
+        // The state is stored as its ordinal + 1, so 0 can mean no state
+        final long packedState = state == null ? 0 : state.ordinal() + 1;
+        return ((long) name.getSeason() << (FIELD_BITS + STATE_BITS)) | ((long) name.getEpisode() << STATE_BITS) | packedState;
+    }
+
+    protected static Name unpackName(long packed, String title) {
+        final int season = (int) (packed >>> (FIELD_BITS + STATE_BITS)) & FIELD_MASK;
+        final int episode = (int) (packed >>> STATE_BITS) & FIELD_MASK;
+        return new Name(title, season, episode);
+    }
+
+    protected static State unpackState(long packed) throws IOException {
+        final int state = (int) packed & STATE_MASK;
+        if (state > STATES.length)
+            throw new IOException("Unknown state: " + (state - 1));
+
+        return state == 0 ? null : STATES[state - 1];
+    }
+
+    protected static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    protected static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    protected static String readTitle(DataInput in) throws IOException {
+        final String title = BinaryCodec.readString(in);
+        return title == null ? null : TITLES.intern(title);
+    }
+
+    private final Codec<T> legacy;
+
+    protected BinaryCodec(Class<T> type) {
+        legacy = new JsonCodec<>(type);
+    }
+
+    @Override
+    public byte[] encode(T value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(VERSION);
+        this.write(out, value);
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] bytes) throws IOException {
+        if (bytes.length > 0 && bytes[0] == JSON_START)
+            return legacy.decode(bytes);
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        final byte version = in.readByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported encoding version: " + version);
+
+        return this.read(in);
+    }
+
+    protected abstract void write(DataOutput out, T value) throws IOException;
+    protected abstract T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,8 @@
+package com.jamierf.mediamanager.models.codec;
+
+import java.io.IOException;
+
+public interface Codec<T> {
+    public byte[] encode(T value) throws IOException;
+    public T decode(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,28 @@
+package com.jamierf.mediamanager.models.codec;
+
+import com.jamierf.mediamanager.models.Episode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class EpisodeCodec extends BinaryCodec<Episode> {
+
+    public static final EpisodeCodec INSTANCE = new EpisodeCodec();
+
+    public EpisodeCodec() {
+        super(Episode.class);
+    }
+
+    @Override
+    protected void write(DataOutput out, Episode episode) throws IOException {
+        out.writeLong(BinaryCodec.pack(episode.getName(), episode.getState()));
+        BinaryCodec.writeString(out, episode.getName().getTitle());
+    }
+
+    @Override
+    protected Episode read(DataInput in) throws IOException {
+        final long packed = in.readLong();
+        return new Episode(BinaryCodec.unpackName(packed, BinaryCodec.readTitle(in)), BinaryCodec.unpackState(packed));
+    }
+}
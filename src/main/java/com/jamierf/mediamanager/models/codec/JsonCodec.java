@@ -0,0 +1,27 @@
+package com.jamierf.mediamanager.models.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+
+import java.io.IOException;
+
+public class JsonCodec<T> implements Codec<T> {
+
+    private static final ObjectMapper JSON = Jackson.newObjectMapper();
+
+    private final Class<T> type;
+
+    public JsonCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(T value) throws IOException {
+        return JSON.writeValueAsBytes(value);
+    }
+
+    @Override
+    public T decode(byte[] bytes) throws IOException {
+        return JSON.readValue(bytes, type);
+    }
+}
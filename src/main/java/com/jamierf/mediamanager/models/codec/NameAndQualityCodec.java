@@ -0,0 +1,31 @@
+package com.jamierf.mediamanager.models.codec;
+
+import com.jamierf.mediamanager.models.NameAndQuality;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class NameAndQualityCodec extends BinaryCodec<NameAndQuality> {
+
+    public static final NameAndQualityCodec INSTANCE = new NameAndQualityCodec();
+
+    public NameAndQualityCodec() {
+        super(NameAndQuality.class);
+    }
+
+    @Override
+    protected void write(DataOutput out, NameAndQuality nameAndQuality) throws IOException {
+        out.writeLong(BinaryCodec.pack(nameAndQuality.getName(), null));
+        BinaryCodec.writeString(out, nameAndQuality.getName().getTitle());
+        BinaryCodec.writeString(out, nameAndQuality.getQuality());
+    }
+
+    @Override
+    protected NameAndQuality read(DataInput in) throws IOException {
+        final long packed = in.readLong();
+        final String title = BinaryCodec.readTitle(in);
+
+        return new NameAndQuality(BinaryCodec.unpackName(packed, title), BinaryCodec.readString(in));
+    }
+}
@@ -0,0 +1,28 @@
+package com.jamierf.mediamanager.models.codec;
+
+import com.jamierf.mediamanager.models.Name;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class NameCodec extends BinaryCodec<Name> {
+
+    public static final NameCodec INSTANCE = new NameCodec();
+
+    public NameCodec() {
+        super(Name.class);
+    }
+
+    @Override
+    protected void write(DataOutput out, Name name) throws IOException {
+        out.writeLong(BinaryCodec.pack(name, null));
+        BinaryCodec.writeString(out, name.getTitle());
+    }
+
+    @Override
+    protected Name read(DataInput in) throws IOException {
+        final long packed = in.readLong();
+        return BinaryCodec.unpackName(packed, BinaryCodec.readTitle(in));
+    }
+}
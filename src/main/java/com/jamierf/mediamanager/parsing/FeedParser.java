@@ -1,5 +1,13 @@
 package com.jamierf.mediamanager.parsing;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jamierf.mediamanager.io.HttpContent;
 import com.jamierf.mediamanager.io.HttpParser;
 import com.jamierf.mediamanager.io.retry.RetryManager;
 import com.sun.jersey.api.client.Client;
@@ -7,25 +15,73 @@ import com.sun.jersey.api.client.WebResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 public abstract class FeedParser<T extends FeedItem> extends HttpParser<T> {
 
     private static final Logger LOG = LoggerFactory.getLogger(FeedParser.class);
 
+    // Validators from the last response we successfully parsed
+    private volatile String etag;
+    private volatile String lastModified;
+
     public FeedParser(Client client, RetryManager retryManager, String url, String method) {
         super(client, retryManager, url, method);
     }
 
     public Set<T> parse() throws Exception {
+        return this.parse(Predicates.<T>alwaysFalse());
+    }
+
+    /**
+     * Parses the feed, skipping items already seen if the parser can do so. Parsers may also stop early
+     * once they are confident the rest of the feed has been seen.
+     */
+    public Set<T> parse(Predicate<? super T> alreadySeen) throws Exception {
         final WebResource.Builder resource = this.buildResource().getRequestBuilder();
-        final String content = this.fetchContent(resource);
+        return this.parseContent(this.fetchContentIfModified(resource, etag, lastModified), alreadySeen).or(ImmutableSet.<T>of());
+    }
 
-        final Set<T> results = this.parse(content);
+    /**
+     * As {@link #parse(Predicate)}, but returns straight after the first attempt to fetch the feed rather
+     * than waiting for any retries. The response is parsed on the given executor, rather than the thread
+     * which fetched it. The result is absent if the feed was not modified since it was last parsed.
+     */
+    public ListenableFuture<Optional<Set<T>>> parseAsync(final Predicate<? super T> alreadySeen, Executor executor) {
+        final WebResource.Builder resource = this.buildResource().getRequestBuilder();
+        return Futures.transform(this.fetchContentIfModifiedAsync(resource, etag, lastModified), new AsyncFunction<Optional<HttpContent>, Optional<Set<T>>>() {
+            @Override
+            public ListenableFuture<Optional<Set<T>>> apply(Optional<HttpContent> content) throws Exception {
+                return Futures.immediateFuture(parseContent(content, alreadySeen));
+            }
+        }, executor);
+    }
+
+    private Optional<Set<T>> parseContent(Optional<HttpContent> content, Predicate<? super T> alreadySeen) throws Exception {
+        if (!content.isPresent()) {
+            LOG.debug("Feed {} not modified", this.getUrl());
+            return Optional.absent();
+        }
+
+        final Set<T> results;
+        try (final HttpContent body = content.get()) {
+            results = this.parse(body.getStream(), body.getCharset(), alreadySeen);
+        }
+
+        // Only remember the validators once parsed, so a failed parse is fetched again in full
+        etag = content.get().getETag();
+        lastModified = content.get().getLastModified();
 
         if (LOG.isDebugEnabled())
             LOG.debug("Parsed {} feed results", results.size());
 
-        return results;
+        return Optional.of(results);
+    }
+
+    protected Set<T> parse(InputStream content, Charset charset, Predicate<? super T> alreadySeen) throws Exception {
+        return this.parse(content, charset);
     }
 }
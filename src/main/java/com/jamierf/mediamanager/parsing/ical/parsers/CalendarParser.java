@@ -1,82 +1,297 @@
 package com.jamierf.mediamanager.parsing.ical.parsers;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.jamierf.mediamanager.io.retry.RetryManager;
 import com.jamierf.mediamanager.parsing.FeedParser;
 import com.jamierf.mediamanager.parsing.ical.CalendarItem;
 import com.sun.jersey.api.client.Client;
-import net.fortuna.ical4j.data.CalendarBuilder;
-import net.fortuna.ical4j.model.Calendar;
-import net.fortuna.ical4j.model.Component;
-import net.fortuna.ical4j.model.Property;
+import io.dropwizard.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.HttpMethod;
-import java.io.StringReader;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Streams through the calendar a content line at a time, keeping only the few properties of each
+ * VEVENT we use. Events outside the horizon are dropped as soon as their start or end is read, so
+ * years of calendar history cost no more than reading past them.
+ */
 public class CalendarParser extends FeedParser<CalendarItem> {
 
     private static final Logger LOG = LoggerFactory.getLogger(CalendarParser.class);
 
+    public static final Duration DEFAULT_PAST_HORIZON = Duration.days(30);
+    public static final Duration DEFAULT_FUTURE_HORIZON = Duration.days(365);
+
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMdd'T'HHmmss");
 
-    private static String getNodeText(Component component, String field, String defaultValue) {
-        final Property property = component.getProperty(field);
-        if (property == null)
-            return defaultValue;
+    private static final String BEGIN = "BEGIN";
+    private static final String END = "END";
+    private static final String EVENT = "VEVENT";
+
+    private static final String UID = "UID";
+    private static final String SUMMARY = "SUMMARY";
+    private static final String DESCRIPTION = "DESCRIPTION";
+    private static final String DTSTART = "DTSTART";
+    private static final String DTEND = "DTEND";
+
+    private static final String[] PROPERTIES = { UID, SUMMARY, DESCRIPTION, DTSTART, DTEND };
+
+    /**
+     * Reads unfolded content lines, holding back the following physical line to see if it continues the
+     * current one. Long lines are folded by breaking them and indenting the continuation with a single
+     * space or tab.
+     */
+    private static class ContentLineReader implements Closeable {
+
+        private final BufferedReader reader;
+        private String next;
+
+        private ContentLineReader(BufferedReader reader) throws IOException {
+            this.reader = reader;
+
+            next = reader.readLine();
+        }
+
+        public String readLine() throws IOException {
+            final String line = next;
+            if (line == null)
+                return null;
 
-        return property.getValue().trim();
+            StringBuilder unfolded = null;
+            while ((next = reader.readLine()) != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                if (unfolded == null)
+                    unfolded = new StringBuilder(line);
+
+                unfolded.append(next, 1, next.length());
+            }
+
+            return unfolded == null ? line : unfolded.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
     }
 
-    private final CalendarBuilder builder;
+    private static int getNameEnd(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == ';' || c == ':')
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static int getValueStart(String line, int nameEnd) {
+        // Parameter values may be quoted, in which case they can contain colons
+        boolean quoted = false;
+        for (int i = nameEnd; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if (c == ':' && !quoted)
+                return i + 1;
+        }
+
+        return -1;
+    }
+
+    private static boolean isName(String line, int nameEnd, String name) {
+        return nameEnd == name.length() && line.regionMatches(true, 0, name, 0, nameEnd);
+    }
+
+    private static String getPropertyName(String line, int nameEnd) {
+        for (String property : PROPERTIES) {
+            if (CalendarParser.isName(line, nameEnd, property))
+                return property;
+        }
+
+        return null;
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0)
+            return text;
+
+        final StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                unescaped.append(c);
+                continue;
+            }
+
+            final char escaped = text.charAt(++i);
+            unescaped.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+        }
+
+        return unescaped.toString();
+    }
+
+    private static String getProperty(Map<String, String> properties, String name, String defaultValue) {
+        final String value = properties.get(name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    private volatile Duration pastHorizon = DEFAULT_PAST_HORIZON;
+    private volatile Duration futureHorizon = DEFAULT_FUTURE_HORIZON;
 
     public CalendarParser(Client client, RetryManager retryManager, String url) {
         super(client, retryManager, url, HttpMethod.GET);
+    }
 
-        builder = new CalendarBuilder();
+    /**
+     * Events which ended more than past ago, or start more than future from now, are skipped.
+     */
+    public void setHorizon(Duration past, Duration future) {
+        this.pastHorizon = past;
+        this.futureHorizon = future;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    protected Set<CalendarItem> parse(String content) throws Exception {
-        final Calendar calendar = builder.build(new StringReader(content));
-
-        final ImmutableSet.Builder<CalendarItem> items = ImmutableSet.builder();
-        for (Component event : (List<Component>) calendar.getComponents()) {
-            try {
-                final CalendarItem item = this.parseItem(event);
-                if (item == null)
+    protected Set<CalendarItem> parse(InputStream content, Charset charset) throws IOException {
+        final long now = System.currentTimeMillis();
+        final long earliest = now - pastHorizon.toMilliseconds();
+        final long latest = now + futureHorizon.toMilliseconds();
+
+        // iCalendar defaults to UTF-8
+        try (final ContentLineReader reader = new ContentLineReader(new BufferedReader(new InputStreamReader(content, charset == null ? StandardCharsets.UTF_8 : charset)))) {
+            final ImmutableSet.Builder<CalendarItem> items = ImmutableSet.builder();
+
+            int skipped = 0;
+            boolean inEvent = false;
+            int nested = 0;
+            Map<String, String> properties = null;
+            Date start = null;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int nameEnd = CalendarParser.getNameEnd(line);
+                if (nameEnd < 0)
                     continue;
 
-                items.add(item);
-            }
-            catch (ParseException e) {
-                LOG.warn("Failed to parse item start/end date", e);
+                if (CalendarParser.isName(line, nameEnd, BEGIN)) {
+                    if (inEvent)
+                        nested++;
+                    else if (EVENT.equalsIgnoreCase(line.substring(nameEnd + 1).trim())) {
+                        inEvent = true;
+                        properties = Maps.newHashMap();
+                        start = null;
+                    }
+
+                    continue;
+                }
+
+                if (!inEvent)
+                    continue;
+
+                if (CalendarParser.isName(line, nameEnd, END)) {
+                    if (nested > 0) {
+                        nested--;
+                        continue;
+                    }
+
+                    inEvent = false;
+
+                    if (properties == null) {
+                        skipped++;
+                        continue;
+                    }
+
+                    // Events without an end are only as old as their start
+                    if (start != null && !properties.containsKey(DTEND) && start.getTime() < earliest) {
+                        skipped++;
+                        continue;
+                    }
+
+                    try {
+                        final CalendarItem item = this.parseItem(properties);
+                        if (item != null)
+                            items.add(item);
+                    }
+                    catch (ParseException e) {
+                        LOG.warn("Failed to parse item start/end date", e);
+                    }
+
+                    continue;
+                }
+
+                // Ignore skipped events, and properties of components inside an event, i.e. alarms
+                if (properties == null || nested > 0)
+                    continue;
+
+                final String name = CalendarParser.getPropertyName(line, nameEnd);
+                if (name == null)
+                    continue;
+
+                final int valueStart = CalendarParser.getValueStart(line, nameEnd);
+                if (valueStart < 0)
+                    continue;
+
+                final String value = line.substring(valueStart);
+                if (name.equals(DTSTART) || name.equals(DTEND)) {
+                    final Date date = this.parseHorizonDate(value);
+                    if (date != null && (name.equals(DTSTART) ? date.getTime() > latest : date.getTime() < earliest)) {
+                        properties = null;
+                        continue;
+                    }
+
+                    if (name.equals(DTSTART))
+                        start = date;
+                }
+
+                properties.put(name, value);
             }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Skipped {} calendar events outside of horizon", skipped);
+
+            return items.build();
         }
+    }
 
-        return items.build();
+    private Date parseHorizonDate(String value) {
+        try {
+            return this.parseDate(value.trim());
+        }
+        catch (ParseException e) {
+            // Leave it to parseItem to report
+            return null;
+        }
     }
 
-    protected CalendarItem parseItem(Component component) throws ParseException {
-        final String uid = CalendarParser.getNodeText(component, "uid", null);
-        final String summary = CalendarParser.getNodeText(component, "summary", "");
-        final String description = CalendarParser.getNodeText(component, "description", "");
+    protected CalendarItem parseItem(Map<String, String> properties) throws ParseException {
+        final String uid = CalendarParser.getProperty(properties, UID, null);
+        final String summary = CalendarParser.unescape(CalendarParser.getProperty(properties, SUMMARY, ""));
+        final String description = CalendarParser.unescape(CalendarParser.getProperty(properties, DESCRIPTION, ""));
 
-        final Date start = this.parseDate(CalendarParser.getNodeText(component, "dtstart", ""));
-        final Date end = this.parseDate(CalendarParser.getNodeText(component, "dtend", ""));
+        final Date start = this.parseDate(CalendarParser.getProperty(properties, DTSTART, ""));
+        final Date end = this.parseDate(CalendarParser.getProperty(properties, DTEND, ""));
 
         return this.newItem(uid, summary, description, start, end);
     }
 
     protected Date parseDate(String date) throws ParseException {
-        return DATE_FORMAT.parse(date);
+        // Feeds are parsed concurrently, and SimpleDateFormat is not thread safe
+        synchronized (DATE_FORMAT) {
+            return DATE_FORMAT.parse(date);
+        }
     }
 
     protected CalendarItem newItem(String uid, String summary, String description, Date start, Date end) {
@@ -1,102 +1,180 @@
 package com.jamierf.mediamanager.parsing.rss.parsers;
 
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.jamierf.mediamanager.io.retry.RetryManager;
 import com.jamierf.mediamanager.parsing.FeedParser;
 import com.jamierf.mediamanager.parsing.ParserException;
 import com.jamierf.mediamanager.parsing.rss.RSSItem;
 import com.sun.jersey.api.client.Client;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
-import org.dom4j.Element;
-import org.dom4j.Node;
-import org.dom4j.io.SAXReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import javax.ws.rs.HttpMethod;
-import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Streams through the feed with a pull parser, building each item as its element ends rather than
+ * loading the whole document. Only the fields of an item we use are kept.
+ *
+ * Items already seen are skipped. Feeds list their newest items first, so once several seen items in a
+ * row have been passed the rest of the feed is assumed to be seen too. A few pinned or reordered items
+ * near the top of a feed do not hide the new items below them.
+ */
 public class RSSParser extends FeedParser<RSSItem> {
 
 	private static final Logger LOG = LoggerFactory.getLogger(RSSParser.class);
 
 	private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z");
 
-	private static SAXReader getSAXReader() {
-		try {
-			return new SAXReader(XMLReaderFactory.createXMLReader());
-		}
-		catch (SAXException e) {
-			throw new ParserException(e);
-		}
+	private static final int MAX_SEEN_IN_ROW = 10;
+
+	private static final String ITEM = "item";
+	private static final Set<String> FIELDS = ImmutableSet.of("guid", "title", "pubDate", "link", "description");
+
+	private static XMLInputFactory getInputFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
 	}
 
-	private static String getNodeText(Element e, String path, String defaultValue) {
-		final Node node = e.selectSingleNode(path);
-		if (node == null)
-			return defaultValue;
+	private static boolean isElement(XMLStreamReader reader, String name) {
+		// Ignore elements from other namespaces, i.e. dc:date
+		final String namespace = reader.getNamespaceURI();
+		return (namespace == null || namespace.isEmpty()) && name.equals(reader.getLocalName());
+	}
 
-		return node.getText().trim();
+	private static String readText(XMLStreamReader reader) throws XMLStreamException {
+		final StringBuilder text = new StringBuilder();
+
+		// Gather all the text inside this element, including that of any nested elements
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					text.append(reader.getText());
+					break;
+			}
+		}
+
+		return text.toString().trim();
 	}
 
-	private final SAXReader reader;
+	private final XMLInputFactory factory;
 
 	public RSSParser(Client client, RetryManager retryManager, String url) throws ParserException {
         super (client, retryManager, url, HttpMethod.GET);
 
-        this.reader = RSSParser.getSAXReader();
+        this.factory = RSSParser.getInputFactory();
 	}
 
     @Override
-    protected Set<RSSItem> parse(String content) throws DocumentException, UnsupportedEncodingException {
-        final Document doc = reader.read(new StringReader(content));
-
-        @SuppressWarnings("unchecked")
-        final List<Element> elements = doc.selectNodes("//rss/channel/item");
-
-        final ImmutableSet.Builder<RSSItem> items = ImmutableSet.builder();
-        for (Element element : elements) {
-            try {
-                final RSSItem item = this.parseItem(element);
-                if (item == null)
-                    continue;
+    protected Set<RSSItem> parse(InputStream content, Charset charset) throws XMLStreamException {
+        return this.parse(content, charset, Predicates.<RSSItem>alwaysFalse());
+    }
 
-                items.add(item);
-            }
-            catch (MalformedURLException e) {
-                LOG.warn("Unable to parse item link", e);
-            }
-            catch (ParseException e) {
-                LOG.warn("Unable to parse item publish date", e);
+    @Override
+    protected Set<RSSItem> parse(InputStream content, Charset charset, Predicate<? super RSSItem> alreadySeen) throws XMLStreamException {
+        // Without a charset from the response, leave the parser to detect it from the document
+        final XMLStreamReader reader = charset == null ? factory.createXMLStreamReader(content) : factory.createXMLStreamReader(content, charset.name());
+
+        try {
+            final ImmutableSet.Builder<RSSItem> items = ImmutableSet.builder();
+
+            Map<String, String> fields = null;
+            int seenInRow = 0;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (RSSParser.isElement(reader, ITEM))
+                        fields = Maps.newHashMap();
+                    else if (fields != null && FIELDS.contains(reader.getLocalName()) && RSSParser.isElement(reader, reader.getLocalName()))
+                        fields.put(reader.getLocalName(), RSSParser.readText(reader));
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT && fields != null && RSSParser.isElement(reader, ITEM)) {
+                    final RSSItem item = this.parseItem(fields);
+                    fields = null;
+
+                    if (item == null)
+                        continue;
+
+                    if (!alreadySeen.apply(item)) {
+                        seenInRow = 0;
+                        items.add(item);
+                        continue;
+                    }
+
+                    // Everything from here on has most likely been seen before
+                    if (++seenInRow >= MAX_SEEN_IN_ROW) {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Reached {} already seen items in a row, stopping", seenInRow);
+
+                        break;
+                    }
+                }
             }
-        }
 
-        return items.build();
+            return items.build();
+        }
+        finally {
+            reader.close();
+        }
     }
 
-	protected RSSItem parseItem(Element e) throws DocumentException, MalformedURLException, ParseException {
-		final String guid = RSSParser.getNodeText(e, "guid", null);
-		final String title = RSSParser.getNodeText(e, "title", "");
-		final String date = RSSParser.getNodeText(e, "pubDate", "");
-		final String link = RSSParser.getNodeText(e, "link", "");
-		final String description = RSSParser.getNodeText(e, "description", "");
+	protected RSSItem parseItem(Map<String, String> fields) {
+		final String guid = fields.get("guid");
+		final String title = RSSParser.getField(fields, "title");
+		final String date = RSSParser.getField(fields, "pubDate");
+		final String link = RSSParser.getField(fields, "link");
+		final String description = RSSParser.getField(fields, "description");
+
+		try {
+			return this.newItem(guid == null ? link : guid, title, this.parseDate(date), URI.create(link), description);
+		}
+		catch (MalformedURLException e) {
+			LOG.warn("Unable to parse item link", e);
+		}
+		catch (ParseException e) {
+			LOG.warn("Unable to parse item publish date", e);
+		}
+
+		return null;
+	}
 
-		return this.newItem(guid == null ? link : guid, title, this.parseDate(date), URI.create(link), description);
+	private static String getField(Map<String, String> fields, String name) {
+		final String value = fields.get(name);
+		return value == null ? "" : value;
 	}
 
 	protected Date parseDate(String date) throws ParseException {
-		return DATE_FORMAT.parse(date);
+		// Feeds are parsed concurrently, and SimpleDateFormat is not thread safe
+		synchronized (DATE_FORMAT) {
+			return DATE_FORMAT.parse(date);
+		}
 	}
 
 	protected RSSItem newItem(String guid, String title, Date date, URI link, String description) throws MalformedURLException, ParseException {
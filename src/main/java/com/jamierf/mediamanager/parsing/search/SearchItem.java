@@ -1,5 +1,6 @@
 package com.jamierf.mediamanager.parsing.search;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
 import com.jamierf.mediamanager.io.ParsedItem;
@@ -18,6 +19,7 @@ public class SearchItem implements ParsedItem, DownloadableItem {
     @JsonProperty
     private final URI link;
 
+    @JsonCreator
     public SearchItem(
             @JsonProperty("id") int id,
             @JsonProperty("title") String title,
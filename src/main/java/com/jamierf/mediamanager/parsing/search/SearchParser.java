@@ -1,5 +1,6 @@
 package com.jamierf.mediamanager.parsing.search;
 
+import com.jamierf.mediamanager.io.HttpContent;
 import com.jamierf.mediamanager.io.HttpParser;
 import com.jamierf.mediamanager.io.retry.RetryManager;
 import com.sun.jersey.api.client.Client;
@@ -21,9 +22,11 @@ public abstract class SearchParser extends HttpParser<SearchItem> {
 
     public Set<SearchItem> search(String query) throws Exception {
         final WebResource.Builder resource = this.buildResource(query);
-        final String content = this.fetchContent(resource);
+        final Set<SearchItem> results;
+        try (final HttpContent content = this.fetchContent(resource)) {
+            results = this.parse(content.getStream(), content.getCharset());
+        }
 
-        final Set<SearchItem> results = this.parse(content);
         LOG.debug("Parsed {} search results: {}", results.size(), results);
 
         return results;
@@ -15,10 +15,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.HttpMethod;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -65,9 +67,9 @@ public class HDBitsParser extends SearchParser {
     }
 
     @Override
-    protected Set<SearchItem> parse(String content) throws Exception {
-        // Read in the entire page at once
-        final Document doc = Jsoup.parse(content);
+    protected Set<SearchItem> parse(InputStream content, Charset charset) throws Exception {
+        // Jsoup detects the charset from the page itself if the response didn't give one
+        final Document doc = Jsoup.parse(content, charset == null ? null : charset.name(), this.getUrl().toString());
 
         final ImmutableSet.Builder<SearchItem> items = ImmutableSet.builder();
 
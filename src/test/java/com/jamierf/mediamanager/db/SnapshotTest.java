@@ -0,0 +1,82 @@
+package com.jamierf.mediamanager.db;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.jamierf.mediamanager.models.Episode;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.State;
+import com.jamierf.mediamanager.models.codec.EpisodeCodec;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class SnapshotTest {
+
+    private static final List<Episode> EPISODES = ImmutableList.of(
+            new Episode(new Name("Tron Uprising", 1, 1), State.DESIRED),
+            new Episode(new Name("Tron Uprising", 1, 2), State.PENDING)
+    );
+
+    private File file;
+    private Snapshot<Episode> snapshot;
+
+    @Before
+    public void setUp() {
+        file = new File(Files.createTempDir(), "show.snapshot");
+        snapshot = new Snapshot<>(file, EpisodeCodec.INSTANCE);
+    }
+
+    @Test
+    public void testMissingSnapshotIsAbsent() {
+        assertFalse(snapshot.read().isPresent());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        snapshot.write(EPISODES);
+
+        final Optional<List<Episode>> read = snapshot.read();
+        assertTrue(read.isPresent());
+        assertEquals(EPISODES, read.get());
+    }
+
+    @Test
+    public void testRewriteReplacesContents() {
+        snapshot.write(EPISODES);
+        snapshot.write(EPISODES.subList(0, 1));
+
+        assertEquals(EPISODES.subList(0, 1), snapshot.read().get());
+        assertFalse(new File(file.getParentFile(), file.getName() + ".tmp").exists());
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsAbsent() throws IOException {
+        snapshot.write(EPISODES);
+
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        assertFalse(snapshot.read().isPresent());
+    }
+
+    @Test
+    public void testUnknownVersionIsAbsent() throws IOException {
+        snapshot.write(EPISODES);
+
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+
+        assertFalse(snapshot.read().isPresent());
+    }
+}
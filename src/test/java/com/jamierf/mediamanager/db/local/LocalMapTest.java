@@ -0,0 +1,155 @@
+package com.jamierf.mediamanager.db.local;
+
+import com.google.common.io.Files;
+import com.jamierf.mediamanager.models.Episode;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.State;
+import com.jamierf.mediamanager.models.codec.JsonCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class LocalMapTest {
+
+    private static Episode episode(int number, State state) {
+        return new Episode(new Name("Tron Uprising", 1, number), state);
+    }
+
+    private File dir;
+    private LocalMap<Name, Episode> map;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDir();
+        map = new LocalMap<>(dir, "show", Name.class, Episode.class, false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        map.close();
+    }
+
+    private void reopen() throws IOException {
+        map.close();
+        map = new LocalMap<>(dir, "show", Name.class, Episode.class, false);
+    }
+
+    @Test
+    public void testReplayAfterReopen() throws IOException {
+        map.put(episode(1, State.DESIRED).getName(), episode(1, State.DESIRED));
+        map.put(episode(2, State.DESIRED).getName(), episode(2, State.DESIRED));
+        map.put(episode(1, State.PENDING).getName(), episode(1, State.PENDING));
+        map.remove(episode(2, State.DESIRED).getName());
+
+        this.reopen();
+
+        assertEquals(1, map.size());
+        assertEquals(episode(1, State.PENDING), map.get(episode(1, State.PENDING).getName()));
+        assertNull(map.get(episode(2, State.DESIRED).getName()));
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws IOException {
+        map.put(episode(1, State.DESIRED).getName(), episode(1, State.DESIRED));
+        map.close();
+
+        // Simulate a crash part way through appending a record
+        final File log = new File(dir, "show.log");
+        final long length = log.length();
+        try (final RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(length);
+            raf.write(new byte[] { 0, 0, 0, 1, 0, 0 });
+        }
+
+        map = new LocalMap<>(dir, "show", Name.class, Episode.class, false);
+
+        assertEquals(length, log.length());
+        assertEquals(episode(1, State.DESIRED), map.get(episode(1, State.DESIRED).getName()));
+    }
+
+    private File writeTwoRecords() throws IOException {
+        map.put(episode(1, State.DESIRED).getName(), episode(1, State.DESIRED));
+        map.put(episode(2, State.DESIRED).getName(), episode(2, State.DESIRED));
+        map.close();
+
+        return new File(dir, "show.log");
+    }
+
+    private long getFirstRecordLength() throws IOException {
+        final File other = Files.createTempDir();
+        try (final LocalMap<Name, Episode> first = new LocalMap<>(other, "show", Name.class, Episode.class, false)) {
+            first.put(episode(1, State.DESIRED).getName(), episode(1, State.DESIRED));
+        }
+
+        return new File(other, "show.log").length();
+    }
+
+    @Test
+    public void testChecksumMismatchIsTruncated() throws IOException {
+        final File log = this.writeTwoRecords();
+
+        // Flip a bit in the last byte of the second record's value
+        try (final RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(log.length() - 1);
+            final int last = raf.read();
+            raf.seek(log.length() - 1);
+            raf.write(last ^ 1);
+        }
+
+        map = new LocalMap<>(dir, "show", Name.class, Episode.class, false);
+
+        assertEquals(this.getFirstRecordLength(), log.length());
+        assertEquals(episode(1, State.DESIRED), map.get(episode(1, State.DESIRED).getName()));
+        assertNull(map.get(episode(2, State.DESIRED).getName()));
+    }
+
+    @Test
+    public void testTruncatedValueIsDropped() throws IOException {
+        final File log = this.writeTwoRecords();
+
+        // The header and key of the second record made it to disk, but not all of its value
+        try (final RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.setLength(log.length() - 3);
+        }
+
+        map = new LocalMap<>(dir, "show", Name.class, Episode.class, false);
+
+        assertEquals(this.getFirstRecordLength(), log.length());
+        assertEquals(episode(1, State.DESIRED), map.get(episode(1, State.DESIRED).getName()));
+        assertNull(map.get(episode(2, State.DESIRED).getName()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValueRejected() {
+        map.put(episode(1, State.DESIRED).getName(), null);
+    }
+
+    @Test
+    public void testCompactsWhenFull() throws IOException {
+        final long recordLength = this.getFirstRecordLength();
+
+        map.close();
+        map = new LocalMap<>(dir, "show", new JsonCodec<>(Name.class), new JsonCodec<>(Episode.class), false, recordLength * 3);
+
+        // Only ever one live entry, so compacting always leaves room for the next record
+        for (int i = 0; i < 10; i++) {
+            final State state = i % 2 == 0 ? State.DESIRED : State.PENDING;
+            map.put(episode(1, state).getName(), episode(1, state));
+        }
+
+        assertTrue(new File(dir, "show.log").length() <= recordLength * 3);
+        assertEquals(episode(1, State.PENDING), map.get(episode(1, State.PENDING).getName()));
+
+        this.reopen();
+
+        assertEquals(episode(1, State.PENDING), map.get(episode(1, State.PENDING).getName()));
+    }
+}
@@ -0,0 +1,77 @@
+package com.jamierf.mediamanager.io;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jamierf.mediamanager.config.RateLimitConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class HostRateLimiterTest {
+
+    private static final String LIMITED = "tracker.example.com";
+    private static final String UNLIMITED = "calendar.example.com";
+
+    private HostRateLimiter rateLimiter;
+
+    @Before
+    public void setUp() throws IOException {
+        final RateLimitConfiguration config = new ObjectMapper().readValue("{\"hosts\": {\"Tracker.Example.com\": 1.0}}", RateLimitConfiguration.class);
+        rateLimiter = new HostRateLimiter(new MetricRegistry(), config);
+    }
+
+    @Test
+    public void testUnconfiguredHostsUnlimited() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, rateLimiter.reserve(UNLIMITED));
+            assertTrue(rateLimiter.tryReserve(UNLIMITED));
+        }
+    }
+
+    @Test
+    public void testReservationsQueueInOrder() {
+        assertEquals(0, rateLimiter.reserve(LIMITED));
+
+        final long second = rateLimiter.reserve(LIMITED);
+        final long third = rateLimiter.reserve(LIMITED);
+
+        assertTrue(second > 900 && second <= 1000);
+        assertTrue(third > 1900 && third <= 2000);
+    }
+
+    @Test
+    public void testTryReserveOnlyWhenFree() {
+        assertTrue(rateLimiter.tryReserve(LIMITED));
+        assertFalse(rateLimiter.tryReserve(LIMITED));
+
+        // A failed attempt reserves nothing, so the next wait is unchanged
+        final long wait = rateLimiter.reserve(LIMITED);
+        assertTrue(wait > 900 && wait <= 1000);
+    }
+
+    @Test
+    public void testReleasedPermitReused() {
+        rateLimiter.reserve(LIMITED);
+        rateLimiter.reserve(LIMITED);
+
+        rateLimiter.release(LIMITED);
+
+        final long wait = rateLimiter.reserve(LIMITED);
+        assertTrue(wait > 900 && wait <= 1000);
+    }
+
+    @Test
+    public void testReleaseNeverFreesPastPermits() {
+        rateLimiter.reserve(LIMITED);
+        rateLimiter.release(LIMITED);
+        rateLimiter.release(LIMITED);
+
+        assertEquals(0, rateLimiter.reserve(LIMITED));
+        assertTrue(rateLimiter.reserve(LIMITED) > 900);
+    }
+}
@@ -0,0 +1,75 @@
+package com.jamierf.mediamanager.io.retry;
+
+import io.dropwizard.util.Duration;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final int THRESHOLD = 3;
+
+    private static CircuitBreaker open(Duration openDuration) {
+        final CircuitBreaker breaker = new CircuitBreaker(THRESHOLD, openDuration);
+        for (int i = 0; i < THRESHOLD - 1; i++)
+            assertFalse(breaker.onFailure());
+
+        assertTrue(breaker.onFailure());
+        return breaker;
+    }
+
+    @Test
+    public void testOpensAfterThreshold() {
+        final CircuitBreaker breaker = open(Duration.minutes(1));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        final CircuitBreaker breaker = new CircuitBreaker(THRESHOLD, Duration.minutes(1));
+        for (int i = 0; i < THRESHOLD * 2; i++) {
+            assertFalse(breaker.onFailure());
+            breaker.onSuccess();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSingleProbeOnceOpenDurationPassed() throws InterruptedException {
+        final CircuitBreaker breaker = open(Duration.milliseconds(50));
+        Thread.sleep(100);
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testSuccessfulProbeCloses() throws InterruptedException {
+        final CircuitBreaker breaker = open(Duration.milliseconds(50));
+        Thread.sleep(100);
+
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testFailedProbeReopens() throws InterruptedException {
+        final CircuitBreaker breaker = open(Duration.milliseconds(50));
+        Thread.sleep(100);
+
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.onFailure());
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,53 @@
+package com.jamierf.mediamanager.io.retry;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class RetryBudgetTest {
+
+    private static void drain(RetryBudget budget) {
+        while (budget.tryWithdraw()) {
+            // Spend everything
+        }
+    }
+
+    @Test
+    public void testStartsWithReserve() {
+        final RetryBudget budget = new RetryBudget(0.25, 2);
+
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    public void testRequestsEarnRetries() {
+        final RetryBudget budget = new RetryBudget(0.25, 10);
+        drain(budget);
+
+        for (int i = 0; i < 3; i++)
+            budget.deposit();
+
+        assertFalse(budget.tryWithdraw());
+
+        budget.deposit();
+
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    public void testBalanceCappedAtReserve() {
+        final RetryBudget budget = new RetryBudget(0.5, 2);
+        drain(budget);
+
+        for (int i = 0; i < 100; i++)
+            budget.deposit();
+
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+}
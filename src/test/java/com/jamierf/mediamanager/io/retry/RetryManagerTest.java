@@ -0,0 +1,424 @@
+package com.jamierf.mediamanager.io.retry;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class RetryManagerTest {
+
+    private static final String HOST = "localhost";
+    private static final long TIMEOUT_MS = 5000;
+
+    private static class TestRetryManager extends RetryManager {
+
+        private final AtomicInteger retryDecisions = new AtomicInteger();
+        private final AtomicInteger budget = new AtomicInteger(Integer.MAX_VALUE);
+        private final AtomicInteger hedgePermits = new AtomicInteger();
+        private final AtomicInteger releasedPermits = new AtomicInteger();
+
+        private volatile int maxAttempts = 3;
+        private volatile long retryDelayMS = 0;
+        private volatile long hedgeDelayMS = -1;
+        private volatile long permitDelayMS = 0;
+        private volatile boolean permitFree = true;
+        private volatile CountDownLatch beforeHedgePermit = new CountDownLatch(0);
+
+        private TestRetryManager(int threads) {
+            super (threads);
+        }
+
+        @Override
+        protected boolean retryFailure(Exception e, int attempts, long startTimeMS) {
+            retryDecisions.incrementAndGet();
+            return attempts < maxAttempts;
+        }
+
+        @Override
+        protected long getRetryDelay(int attempts) {
+            return retryDelayMS;
+        }
+
+        @Override
+        protected long getHedgeDelay(String host) {
+            return hedgeDelayMS;
+        }
+
+        @Override
+        protected long reservePermit(String host, boolean wait) {
+            if (wait)
+                return permitDelayMS;
+
+            hedgePermits.incrementAndGet();
+            Uninterruptibles.awaitUninterruptibly(beforeHedgePermit);
+            return permitFree ? 0 : -1;
+        }
+
+        @Override
+        protected void releasePermit(String host) {
+            releasedPermits.incrementAndGet();
+        }
+
+        @Override
+        protected boolean acquireRetry(String host) {
+            return budget.getAndDecrement() > 0;
+        }
+    }
+
+    private static class Response implements Closeable {
+
+        private final int call;
+        private volatile boolean closed;
+
+        private Response(int call) {
+            this.call = call;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    // Each call blocks until released by the test, if given a latch for it, then succeeds or fails
+    private static class ScriptedCallable implements Callable<Response> {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Map<Integer, CountDownLatch> blocks = Maps.newConcurrentMap();
+        private final Map<Integer, CountDownLatch> started = Maps.newConcurrentMap();
+        private final Set<Integer> failures = Sets.newConcurrentHashSet();
+        private final List<Response> responses = Lists.newCopyOnWriteArrayList();
+
+        private ScriptedCallable block(int call, CountDownLatch latch) {
+            blocks.put(call, latch);
+            return this;
+        }
+
+        private ScriptedCallable fail(int call) {
+            failures.add(call);
+            return this;
+        }
+
+        private CountDownLatch started(int call) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            started.put(call, latch);
+            return latch;
+        }
+
+        @Override
+        public Response call() throws Exception {
+            final int call = calls.incrementAndGet();
+
+            final CountDownLatch start = started.get(call);
+            if (start != null)
+                start.countDown();
+
+            final CountDownLatch block = blocks.get(call);
+            if (block != null)
+                Uninterruptibles.awaitUninterruptibly(block);
+
+            if (failures.contains(call))
+                throw new IllegalStateException("Failure " + call);
+
+            final Response response = new Response(call);
+            responses.add(response);
+            return response;
+        }
+    }
+
+    // Fails the given number of times before returning how many calls it took
+    private static class FailingCallable implements Callable<Integer> {
+
+        private final int failures;
+        private final AtomicInteger calls;
+
+        private FailingCallable(int failures) {
+            this.failures = failures;
+
+            calls = new AtomicInteger();
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            final int call = calls.incrementAndGet();
+            if (call <= failures)
+                throw new IllegalStateException("Failure " + call);
+
+            return call;
+        }
+    }
+
+    private TestRetryManager retryManager;
+
+    @Before
+    public void setUp() {
+        retryManager = new TestRetryManager(2);
+        retryManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        retryManager.stop();
+    }
+
+    private static <T> T get(ListenableFuture<T> future) throws Exception {
+        return future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean waitFor(AtomicInteger counter, int value) throws InterruptedException {
+        final long deadlineMS = System.currentTimeMillis() + TIMEOUT_MS;
+        while (counter.get() < value) {
+            if (System.currentTimeMillis() > deadlineMS)
+                return false;
+
+            Thread.sleep(10);
+        }
+
+        return true;
+    }
+
+    @Test
+    public void testRetriesUntilSuccess() {
+        final FailingCallable callable = new FailingCallable(2);
+
+        assertEquals(3, (int) retryManager.apply(HOST, callable));
+        assertEquals(2, retryManager.retryDecisions.get());
+    }
+
+    @Test
+    public void testGivesUpWithLastFailure() {
+        final FailingCallable callable = new FailingCallable(Integer.MAX_VALUE);
+
+        try {
+            retryManager.apply(HOST, callable);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertEquals("Failure 3", e.getMessage());
+        }
+
+        assertEquals(3, callable.calls.get());
+    }
+
+    @Test
+    public void testCancelStopsRetries() throws Exception {
+        retryManager.maxAttempts = Integer.MAX_VALUE;
+        retryManager.retryDelayMS = 50;
+
+        final FailingCallable callable = new FailingCallable(Integer.MAX_VALUE);
+        final ListenableFuture<Integer> future = retryManager.applyAsync(HOST, callable);
+
+        Thread.sleep(200);
+        future.cancel(false);
+
+        // Let any retry already handed to the pool finish
+        Thread.sleep(100);
+        final int calls = callable.calls.get();
+
+        Thread.sleep(300);
+        assertEquals(calls, callable.calls.get());
+
+        try {
+            future.get();
+            fail();
+        }
+        catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBackingOffHoldsNoThread() throws Exception {
+        retryManager.retryDelayMS = 500;
+
+        // Far more calls backing off at once than there are threads, each should take about one delay
+        final int calls = 20;
+        final CountDownLatch done = new CountDownLatch(calls);
+        final long startMS = System.currentTimeMillis();
+
+        for (int i = 0; i < calls; i++) {
+            final ListenableFuture<Integer> future = retryManager.applyAsync(HOST, new FailingCallable(1));
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - startMS < 500 * 3);
+    }
+
+    @Test
+    public void testCancelWhileWaitingReleasesPermit() throws Exception {
+        retryManager.permitDelayMS = 300;
+
+        final FailingCallable callable = new FailingCallable(0);
+        final ListenableFuture<Integer> future = retryManager.applyAsync(HOST, callable);
+
+        Thread.sleep(50);
+        future.cancel(false);
+        Thread.sleep(500);
+
+        assertEquals(1, retryManager.releasedPermits.get());
+        assertEquals(0, callable.calls.get());
+    }
+
+    @Test
+    public void testUsedPermitNotReleased() throws Exception {
+        retryManager.permitDelayMS = 50;
+
+        final ListenableFuture<Integer> future = retryManager.applyAsync(HOST, new FailingCallable(0));
+        assertEquals(1, (int) get(future));
+
+        future.cancel(false);
+        assertEquals(0, retryManager.releasedPermits.get());
+    }
+
+    @Test
+    public void testFailureSurfacesFromFuture() throws Exception {
+        retryManager.maxAttempts = 1;
+
+        final ListenableFuture<Integer> future = retryManager.applyAsync(HOST, new FailingCallable(1));
+
+        try {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testHedgeWinsAndSlowResultIsDiscarded() throws Exception {
+        retryManager.hedgeDelayMS = 50;
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final ScriptedCallable callable = new ScriptedCallable().block(1, release);
+
+        final Response response = get(retryManager.applyAsync(HOST, callable));
+        assertEquals(2, response.call);
+        assertFalse(response.closed);
+
+        // Let the original copy finish, its response is no longer wanted
+        release.countDown();
+        Thread.sleep(100);
+
+        assertEquals(2, callable.responses.size());
+        assertTrue(callable.responses.get(1).closed);
+    }
+
+    @Test
+    public void testNoHedgeOnceAttemptFinished() throws Exception {
+        retryManager.hedgeDelayMS = 50;
+
+        final ScriptedCallable callable = new ScriptedCallable();
+        assertEquals(1, get(retryManager.applyAsync(HOST, callable)).call);
+
+        Thread.sleep(200);
+
+        assertEquals(1, callable.calls.get());
+        assertEquals(0, retryManager.hedgePermits.get());
+        assertEquals(Integer.MAX_VALUE, retryManager.budget.get());
+    }
+
+    @Test
+    public void testNoPermitSpentWithoutBudget() throws Exception {
+        retryManager.hedgeDelayMS = 50;
+        retryManager.budget.set(0);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final ScriptedCallable callable = new ScriptedCallable().block(1, release);
+        final ListenableFuture<Response> future = retryManager.applyAsync(HOST, callable);
+
+        Thread.sleep(200);
+        release.countDown();
+
+        assertEquals(1, get(future).call);
+        assertEquals(1, callable.calls.get());
+        assertEquals(0, retryManager.hedgePermits.get());
+    }
+
+    @Test
+    public void testNoHedgeWithoutFreePermit() throws Exception {
+        retryManager.hedgeDelayMS = 50;
+        retryManager.permitFree = false;
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final ScriptedCallable callable = new ScriptedCallable().block(1, release);
+        final ListenableFuture<Response> future = retryManager.applyAsync(HOST, callable);
+
+        Thread.sleep(200);
+        release.countDown();
+
+        assertEquals(1, get(future).call);
+        assertEquals(1, callable.calls.get());
+        assertEquals(1, retryManager.hedgePermits.get());
+    }
+
+    @Test
+    public void testOnlyLastFailedCopyRetries() throws Exception {
+        retryManager.hedgeDelayMS = 50;
+        retryManager.maxAttempts = 2;
+
+        // The hedged copy fails first, then the original, then the retry succeeds
+        final CountDownLatch release = new CountDownLatch(1);
+        final ScriptedCallable callable = new ScriptedCallable().fail(1).fail(2).block(1, release);
+        final CountDownLatch hedgeStarted = callable.started(2);
+        final ListenableFuture<Response> future = retryManager.applyAsync(HOST, callable);
+
+        assertTrue(hedgeStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals(3, get(future).call);
+        assertEquals(1, retryManager.retryDecisions.get());
+    }
+
+    @Test
+    public void testAbandonedHedgeStillRetries() throws Exception {
+        retryManager.hedgeDelayMS = 50;
+        retryManager.maxAttempts = 2;
+        retryManager.permitFree = false;
+
+        // The hedge joins the attempt, and the original fails while it waits for a permit it won't get
+        final CountDownLatch permitRefused = new CountDownLatch(1);
+        retryManager.beforeHedgePermit = permitRefused;
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final ScriptedCallable callable = new ScriptedCallable().fail(1).block(1, release);
+        final ListenableFuture<Response> future = retryManager.applyAsync(HOST, callable);
+
+        assertTrue(waitFor(retryManager.hedgePermits, 1));
+        release.countDown();
+        Thread.sleep(50);
+        permitRefused.countDown();
+
+        // The original left the retry to the hedge, which has to make it with the original's failure
+        assertEquals(2, get(future).call);
+        assertEquals(1, retryManager.retryDecisions.get());
+    }
+}
@@ -0,0 +1,64 @@
+package com.jamierf.mediamanager.managers;
+
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class FeedScheduleTest {
+
+    private static final Duration MIN_DELAY = Duration.minutes(1);
+    private static final Duration MAX_DELAY = Duration.hours(1);
+
+    private FeedSchedule schedule;
+
+    @Before
+    public void setUp() {
+        schedule = new FeedSchedule(MIN_DELAY, MAX_DELAY);
+    }
+
+    @Test
+    public void testStartsAtMinimum() {
+        assertEquals(MIN_DELAY.toMilliseconds(), schedule.getDelay());
+    }
+
+    @Test
+    public void testBacksOffAtMostDoublingUpToMaximum() {
+        long previous = schedule.getDelay();
+        for (int i = 0; i < 20; i++) {
+            final long delay = schedule.update(0, true);
+
+            assertTrue(delay >= previous);
+            assertTrue(delay <= previous * 2);
+            previous = delay;
+        }
+
+        assertEquals(MAX_DELAY.toMilliseconds(), previous);
+    }
+
+    @Test
+    public void testNewItemsDropToMinimum() {
+        for (int i = 0; i < 10; i++)
+            schedule.update(0, true);
+
+        assertTrue(schedule.getDelay() > MIN_DELAY.toMilliseconds());
+        assertEquals(MIN_DELAY.toMilliseconds(), schedule.update(1, false));
+    }
+
+    @Test
+    public void testUnmodifiedFeedsBackOffFurther() {
+        final FeedSchedule modified = new FeedSchedule(MIN_DELAY, MAX_DELAY);
+
+        schedule.update(5, false);
+        modified.update(5, false);
+
+        for (int i = 0; i < 3; i++) {
+            schedule.update(0, true);
+            modified.update(0, false);
+        }
+
+        assertTrue(schedule.getDelay() > modified.getDelay());
+    }
+}
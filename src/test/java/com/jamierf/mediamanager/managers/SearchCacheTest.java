@@ -0,0 +1,158 @@
+package com.jamierf.mediamanager.managers;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.jamierf.mediamanager.parsing.search.SearchItem;
+import com.jamierf.mediamanager.parsing.search.SearchParser;
+import com.sun.jersey.api.client.WebResource;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.HttpMethod;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class SearchCacheTest {
+
+    private static class TestParser extends SearchParser {
+
+        private TestParser() {
+            super (null, null, "http://localhost/search", HttpMethod.GET);
+        }
+
+        @Override
+        protected WebResource.Builder buildResource(String query) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Set<SearchItem> parse(InputStream content, Charset charset) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static Set<SearchItem> results(String query) {
+        return ImmutableSet.of(new SearchItem(query.hashCode(), query, URI.create("http://localhost/" + query.hashCode())));
+    }
+
+    private final SearchParser parser = new TestParser();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    private SearchCache newCache(Duration negativeTtl, Size maxSize) throws IOException {
+        return new SearchCache(dir, Duration.hours(1), negativeTtl, maxSize);
+    }
+
+    private int countFiles() {
+        return dir.list().length;
+    }
+
+    @Test
+    public void testNothingCachedWithoutDirectory() throws IOException {
+        final SearchCache cache = new SearchCache(null, Duration.hours(1), Duration.hours(1), Size.megabytes(1));
+        cache.put(parser, "tron", results("tron"));
+
+        assertFalse(cache.get(parser, "tron").isPresent());
+    }
+
+    @Test
+    public void testCachedResultsSurviveReload() throws IOException {
+        newCache(Duration.hours(1), Size.megabytes(1)).put(parser, "tron", results("tron"));
+
+        final Optional<Set<SearchItem>> cached = newCache(Duration.hours(1), Size.megabytes(1)).get(parser, "tron");
+        assertTrue(cached.isPresent());
+        assertEquals(results("tron"), cached.get());
+    }
+
+    @Test
+    public void testEmptyResultsExpireSooner() throws Exception {
+        final SearchCache cache = newCache(Duration.milliseconds(10), Size.megabytes(1));
+        cache.put(parser, "empty", ImmutableSet.<SearchItem>of());
+        cache.put(parser, "tron", results("tron"));
+
+        Thread.sleep(50);
+
+        assertFalse(cache.get(parser, "empty").isPresent());
+        assertTrue(cache.get(parser, "tron").isPresent());
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws IOException {
+        final SearchCache cache = newCache(Duration.hours(1), Size.megabytes(1));
+        cache.put(parser, "query-0", results("query-0"));
+        final long entrySize = dir.listFiles()[0].length();
+
+        // Room for three entries
+        final SearchCache small = newCache(Duration.hours(1), Size.bytes(entrySize * 3 + entrySize / 2));
+        small.put(parser, "query-1", results("query-1"));
+        small.put(parser, "query-2", results("query-2"));
+
+        assertTrue(small.get(parser, "query-0").isPresent());
+        small.put(parser, "query-3", results("query-3"));
+
+        assertTrue(small.get(parser, "query-0").isPresent());
+        assertFalse(small.get(parser, "query-1").isPresent());
+        assertEquals(3, countFiles());
+    }
+
+    @Test
+    public void testConcurrentSearches() throws Exception {
+        final SearchCache cache = newCache(Duration.hours(1), Size.megabytes(1));
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        try {
+            final Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                final int thread = t;
+                futures[t] = pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 50; i++) {
+                            final String query = "query-" + (i % 10);
+                            cache.put(parser, query, results(query));
+
+                            final Optional<Set<SearchItem>> cached = cache.get(parser, "query-" + ((i + thread) % 10));
+                            if (cached.isPresent())
+                                assertEquals(results("query-" + ((i + thread) % 10)), cached.get());
+                        }
+
+                        return null;
+                    }
+                });
+            }
+
+            for (Future<?> future : futures)
+                future.get(10, TimeUnit.SECONDS);
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        for (int i = 0; i < 10; i++)
+            assertTrue(cache.get(parser, "query-" + i).isPresent());
+
+        assertEquals(10, countFiles());
+    }
+}
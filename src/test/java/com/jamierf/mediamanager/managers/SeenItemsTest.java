@@ -0,0 +1,108 @@
+package com.jamierf.mediamanager.managers;
+
+import com.google.common.io.Files;
+import io.dropwizard.util.Size;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class SeenItemsTest {
+
+    private static final Size BUDGET = Size.bytes(1024);
+
+    private File file;
+    private SeenItems seen;
+
+    @Before
+    public void setUp() {
+        file = new File(Files.createTempDir(), "feed.seen");
+        seen = new SeenItems(file, BUDGET);
+    }
+
+    @Test
+    public void testAddAndContains() {
+        assertTrue(seen.add("item-1"));
+        assertFalse(seen.add("item-1"));
+
+        assertTrue(seen.contains("item-1"));
+        assertFalse(seen.contains("item-2"));
+        assertEquals(1, seen.size());
+    }
+
+    @Test
+    public void testOldestForgottenWhenFull() {
+        final int capacity = seen.capacity();
+        for (int i = 0; i < capacity; i++)
+            assertTrue(seen.add("item-" + i));
+
+        assertTrue(seen.add("item-" + capacity));
+
+        assertEquals(capacity, seen.size());
+        assertFalse(seen.contains("item-0"));
+        for (int i = 1; i <= capacity; i++)
+            assertTrue(seen.contains("item-" + i));
+    }
+
+    @Test
+    public void testEvictionKeepsEveryLaterItemReachable() {
+        // Enough churn through a small table that removals have to shift back runs of collided entries,
+        // including runs which wrap around the end of the table
+        final int capacity = seen.capacity();
+        for (int i = 0; i < capacity * 200; i++) {
+            seen.add("item-" + i);
+
+            if (i >= capacity)
+                assertFalse(seen.contains("item-" + (i - capacity)));
+
+            for (int j = Math.max(0, i - capacity + 1); j <= i; j++)
+                assertTrue("item-" + j + " lost after adding item-" + i, seen.contains("item-" + j));
+        }
+    }
+
+    @Test
+    public void testForgottenItemCanBeSeenAgain() {
+        final int capacity = seen.capacity();
+        for (int i = 0; i <= capacity; i++)
+            seen.add("item-" + i);
+
+        assertTrue(seen.add("item-0"));
+        assertFalse(seen.contains("item-1"));
+    }
+
+    @Test
+    public void testOrderSurvivesReload() {
+        final int capacity = seen.capacity();
+        for (int i = 0; i < capacity; i++)
+            seen.add("item-" + i);
+
+        seen.save();
+        seen = new SeenItems(file, BUDGET);
+
+        assertEquals(capacity, seen.size());
+
+        // The oldest item should still be the first to go
+        seen.add("item-" + capacity);
+        assertFalse(seen.contains("item-0"));
+        assertTrue(seen.contains("item-1"));
+    }
+
+    @Test
+    public void testReloadWithSmallerBudgetKeepsNewest() {
+        final SeenItems large = new SeenItems(file, Size.kilobytes(64));
+        final int capacity = large.capacity();
+        for (int i = 0; i < capacity; i++)
+            large.add("item-" + i);
+
+        large.save();
+        seen = new SeenItems(file, BUDGET);
+
+        assertEquals(seen.capacity(), seen.size());
+        assertTrue(seen.contains("item-" + (capacity - 1)));
+        assertFalse(seen.contains("item-0"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.jamierf.mediamanager.models.codec;
+
+import com.jamierf.mediamanager.models.Episode;
+import com.jamierf.mediamanager.models.Name;
+import com.jamierf.mediamanager.models.NameAndQuality;
+import com.jamierf.mediamanager.models.State;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class BinaryCodecTest {
+
+    private static final Name NAME = new Name("Tron Uprising", 1, 12);
+
+    @Test
+    public void testEpisodeRoundTrip() throws IOException {
+        for (State state : State.values()) {
+            final Episode episode = new Episode(NAME, state);
+            assertEquals(episode, EpisodeCodec.INSTANCE.decode(EpisodeCodec.INSTANCE.encode(episode)));
+        }
+    }
+
+    @Test
+    public void testNameAndQualityRoundTrip() throws IOException {
+        final NameAndQuality withQuality = new NameAndQuality(NAME, "720p");
+        assertEquals(withQuality, NameAndQualityCodec.INSTANCE.decode(NameAndQualityCodec.INSTANCE.encode(withQuality)));
+
+        final NameAndQuality withoutQuality = new NameAndQuality(NAME, null);
+        assertEquals(withoutQuality, NameAndQualityCodec.INSTANCE.decode(NameAndQualityCodec.INSTANCE.encode(withoutQuality)));
+    }
+
+    @Test
+    public void testSmallerThanJson() throws IOException {
+        final Episode episode = new Episode(NAME, State.DESIRED);
+        final byte[] json = new JsonCodec<>(Episode.class).encode(episode);
+
+        assertTrue(EpisodeCodec.INSTANCE.encode(episode).length < json.length / 2);
+    }
+
+    @Test
+    public void testDecodesLegacyJson() throws IOException {
+        final Episode episode = new Episode(NAME, State.PENDING);
+        final byte[] json = new JsonCodec<>(Episode.class).encode(episode);
+
+        assertEquals(episode, EpisodeCodec.INSTANCE.decode(json));
+        assertEquals(NAME, NameCodec.INSTANCE.decode(new JsonCodec<>(Name.class).encode(NAME)));
+    }
+
+    @Test
+    public void testTitlesAreInterned() throws IOException {
+        final Name first = NameCodec.INSTANCE.decode(NameCodec.INSTANCE.encode(NAME));
+        final Name second = NameCodec.INSTANCE.decode(NameCodec.INSTANCE.encode(new Name(new String(NAME.getTitle()), 2, 1)));
+
+        assertSame(first.getTitle(), second.getTitle());
+    }
+}
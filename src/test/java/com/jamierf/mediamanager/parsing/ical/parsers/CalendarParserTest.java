@@ -0,0 +1,147 @@
+package com.jamierf.mediamanager.parsing.ical.parsers;
+
+import com.google.common.collect.Maps;
+import com.jamierf.mediamanager.parsing.ical.CalendarItem;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class CalendarParserTest {
+
+    private static final int EVENTS = 500;
+    private static final String CRLF = "\r\n";
+
+    // Hands out a few bytes at a time, as a chunked response would, so lines straddle the reader's buffer
+    private static class ChunkedInputStream extends FilterInputStream {
+
+        private final int chunkSize;
+
+        private ChunkedInputStream(InputStream in, int chunkSize) {
+            super(in);
+
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+
+    private static String formatDate(long time) {
+        return new SimpleDateFormat("yyyyMMdd'T'HHmmss").format(new Date(time));
+    }
+
+    private static void appendEvent(StringBuilder calendar, String uid, String summary, long start) {
+        calendar.append("BEGIN:VEVENT").append(CRLF);
+        calendar.append("UID:").append(uid).append(CRLF);
+        calendar.append("DTSTART:").append(formatDate(start)).append(CRLF);
+        calendar.append("DTEND:").append(formatDate(start + TimeUnit.HOURS.toMillis(1))).append(CRLF);
+
+        // Fold the summary part way through, and the description across several lines
+        calendar.append("SUMMARY:").append(summary, 0, 5).append(CRLF);
+        calendar.append(" ").append(summary.substring(5)).append(CRLF);
+        calendar.append("DESCRIPTION:Season premiere\\, the one where everything hap").append(CRLF);
+        calendar.append("\tpens all over ag").append(CRLF);
+        calendar.append(" ain").append(CRLF);
+
+        calendar.append("BEGIN:VALARM").append(CRLF);
+        calendar.append("ACTION:DISPLAY").append(CRLF);
+        calendar.append("SUMMARY:Alarm for ").append(uid).append(CRLF);
+        calendar.append("DESCRIPTION:Reminder").append(CRLF);
+        calendar.append("END:VALARM").append(CRLF);
+
+        calendar.append("END:VEVENT").append(CRLF);
+    }
+
+    private CalendarParser parser;
+    private byte[] calendar;
+    private long now;
+
+    @Before
+    public void setUp() {
+        parser = new CalendarParser(null, null, "http://localhost/calendar.ics");
+        parser.setHorizon(Duration.days(30), Duration.days(365));
+
+        now = System.currentTimeMillis();
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append("BEGIN:VCALENDAR").append(CRLF);
+        builder.append("VERSION:2.0").append(CRLF);
+        builder.append("PRODID:-//pogdesign//tvcalendar").append(CRLF);
+
+        appendEvent(builder, "ancient", "Long Ago S01E01", now - TimeUnit.DAYS.toMillis(400));
+
+        for (int i = 0; i < EVENTS; i++)
+            appendEvent(builder, "event-" + i, "Tron Uprising S01E" + i, now + TimeUnit.HOURS.toMillis(i));
+
+        appendEvent(builder, "distant", "Far Future S09E09", now + TimeUnit.DAYS.toMillis(800));
+
+        builder.append("END:VCALENDAR").append(CRLF);
+
+        calendar = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Map<String, CalendarItem> parse(InputStream in) throws IOException {
+        final Map<String, CalendarItem> items = Maps.newHashMap();
+        for (CalendarItem item : parser.parse(in, StandardCharsets.UTF_8))
+            items.put(item.getUid(), item);
+
+        return items;
+    }
+
+    private void assertParsed(Map<String, CalendarItem> items) {
+        assertEquals(EVENTS, items.size());
+
+        for (int i = 0; i < EVENTS; i++) {
+            final CalendarItem item = items.get("event-" + i);
+
+            assertEquals("Tron Uprising S01E" + i, item.getSummary());
+            assertEquals("Season premiere, the one where everything happens all over again", item.getDescription());
+        }
+    }
+
+    @Test
+    public void testLargeCrlfCalendar() throws IOException {
+        assertTrue(calendar.length > 8192);
+
+        assertParsed(this.parse(new ByteArrayInputStream(calendar)));
+    }
+
+    @Test
+    public void testChunkedCrlfCalendar() throws IOException {
+        for (int chunkSize = 1; chunkSize <= 17; chunkSize++)
+            assertParsed(this.parse(new ChunkedInputStream(new ByteArrayInputStream(calendar), chunkSize)));
+    }
+
+    @Test
+    public void testEventsOutsideHorizonSkipped() throws IOException {
+        final Map<String, CalendarItem> items = this.parse(new ByteArrayInputStream(calendar));
+
+        assertFalse(items.containsKey("ancient"));
+        assertFalse(items.containsKey("distant"));
+    }
+
+    @Test
+    public void testNestedAlarmIgnored() throws IOException {
+        final Map<String, CalendarItem> items = this.parse(new ByteArrayInputStream(calendar));
+
+        for (CalendarItem item : items.values())
+            assertFalse(item.getSummary().startsWith("Alarm"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.jamierf.mediamanager.parsing.rss.parsers;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.jamierf.mediamanager.parsing.rss.RSSItem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class RSSParserTest {
+
+    private static final int SEEN = 50;
+
+    private static void appendItem(StringBuilder feed, String guid) {
+        feed.append("<item>");
+        feed.append("<guid>").append(guid).append("</guid>");
+        feed.append("<title>Tron Uprising ").append(guid).append("</title>");
+        feed.append("<pubDate>Sat, 1 Jun 2013 20:00:00 +0000</pubDate>");
+        feed.append("<link>http://localhost/").append(guid).append(".torrent</link>");
+        feed.append("<description><![CDATA[<b>").append(guid).append("</b>]]></description>");
+        feed.append("</item>");
+    }
+
+    private static Predicate<RSSItem> seenFrom(final Set<String> seen) {
+        return new Predicate<RSSItem>() {
+            @Override
+            public boolean apply(RSSItem item) {
+                return seen.contains(item.getUid());
+            }
+        };
+    }
+
+    private static Set<String> getUids(Set<RSSItem> items) {
+        final Set<String> uids = Sets.newHashSet();
+        for (RSSItem item : items)
+            uids.add(item.getUid());
+
+        return uids;
+    }
+
+    private RSSParser parser;
+    private Set<String> seen;
+
+    @Before
+    public void setUp() {
+        parser = new RSSParser(null, null, "http://localhost/feed.rss");
+
+        seen = Sets.newHashSet();
+        for (int i = 0; i < SEEN; i++)
+            seen.add("old-" + i);
+    }
+
+    private Set<String> parse(String... guids) throws Exception {
+        final StringBuilder feed = new StringBuilder();
+        feed.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><rss version=\"2.0\"><channel><title>Feed</title>");
+
+        for (String guid : guids)
+            appendItem(feed, guid);
+
+        feed.append("</channel></rss>");
+
+        final byte[] content = feed.toString().getBytes(StandardCharsets.UTF_8);
+        return getUids(parser.parse(new ByteArrayInputStream(content), StandardCharsets.UTF_8, seenFrom(seen)));
+    }
+
+    private static String[] concat(String[] first, String... second) {
+        final String[] result = new String[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static String[] old(int from, int to) {
+        final String[] guids = new String[to - from];
+        for (int i = from; i < to; i++)
+            guids[i - from] = "old-" + i;
+
+        return guids;
+    }
+
+    @Test
+    public void testSeenItemsSkipped() throws Exception {
+        final Set<String> uids = this.parse("new-0", "old-0", "new-1", "old-1", "new-2");
+
+        assertEquals(ImmutableSet.of("new-0", "new-1", "new-2"), uids);
+    }
+
+    @Test
+    public void testPinnedSeenItemDoesNotHideNewItems() throws Exception {
+        final Set<String> uids = this.parse(concat(old(0, 3), "new-0", "new-1"));
+
+        assertEquals(ImmutableSet.of("new-0", "new-1"), uids);
+    }
+
+    @Test
+    public void testStopsAfterManySeenInRow() throws Exception {
+        final Set<String> uids = this.parse(concat(concat(new String[] { "new-0" }, old(0, SEEN)), "new-1"));
+
+        assertTrue(uids.contains("new-0"));
+        assertFalse(uids.contains("new-1"));
+    }
+
+    @Test
+    public void testFieldsParsed() throws Exception {
+        final StringBuilder feed = new StringBuilder("<rss><channel>");
+        appendItem(feed, "new-0");
+        feed.append("</channel></rss>");
+
+        final Set<RSSItem> items = parser.parse(new ByteArrayInputStream(feed.toString().getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        assertEquals(1, items.size());
+
+        final RSSItem item = items.iterator().next();
+        assertEquals("new-0", item.getUid());
+        assertEquals("Tron Uprising new-0", item.getTitle());
+        assertEquals("<b>new-0</b>", item.getDescription());
+    }
+}